@@ -0,0 +1,184 @@
+package com.github.pfichtner.jsipdialer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.sip.message.SipMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The work done per SIP packet: parsing what a FRITZ!Box or Kamailio sends,
+ * dropping unsolicited responses before they are parsed, matching responses to
+ * our INVITEs the way {@link SipEndpoint} does and building and serializing
+ * the requests we send. Run with {@code -prof gc} (the default of the
+ * {@code jmh} profile) to also see the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CallServiceBenchmark {
+
+	private static final String INVITE = """
+			INVITE sip:**9@fritz.box SIP/2.0
+			Via: SIP/2.0/UDP 192.168.178.20:15062;rport;branch=z9hG4bK5a3f8c2e1d
+			Max-Forwards: 70
+			To: <sip:**9@fritz.box>
+			From: "Doorbell" <sip:620@fritz.box>;tag=7d9e1f3a
+			Call-ID: 4f2b6a1c9e8d7f30@192.168.178.20
+			CSeq: 1 INVITE
+			Contact: <sip:620@192.168.178.20:15062>
+			Expires: 3600
+			User-Agent: mjsip 2.0.5
+			Content-Type: application/sdp
+			Content-Length: 82
+
+			v=0
+			o=620 0 0 IN IP4 0.0.0.0
+			s=-
+			c=IN IP4 0.0.0.0
+			t=0 0
+			m=audio 9 RTP/AVP 0
+			""";
+
+	private static final String FRITZ_BOX_401 = """
+			SIP/2.0 401 Unauthorized
+			Via: SIP/2.0/UDP 192.168.178.20:15062;rport=15062;branch=z9hG4bK5a3f8c2e1d;received=192.168.178.20
+			From: "Doorbell" <sip:620@fritz.box>;tag=7d9e1f3a
+			To: <sip:**9@fritz.box>;tag=AB12CD34EF56A7B8
+			Call-ID: 4f2b6a1c9e8d7f30@192.168.178.20
+			CSeq: 1 INVITE
+			WWW-Authenticate: Digest realm="fritz.box", nonce="2B5D9A0C1E3F4A6B"
+			User-Agent: FRITZ!OS
+			Content-Length: 0
+
+			""";
+
+	private static final String KAMAILIO_200 = """
+			SIP/2.0 200 OK
+			Via: SIP/2.0/UDP 192.168.178.20:15062;rport=15062;branch=z9hG4bK5a3f8c2e1d;received=192.168.178.20
+			Record-Route: <sip:10.0.0.5;lr;ftag=7d9e1f3a>
+			From: "Doorbell" <sip:620@fritz.box>;tag=7d9e1f3a
+			To: <sip:**9@fritz.box>;tag=as5c2b1a9e
+			Call-ID: 4f2b6a1c9e8d7f30@192.168.178.20
+			CSeq: 1 INVITE
+			Contact: <sip:callee@10.0.0.17:5060;transport=udp>
+			Allow: INVITE, ACK, CANCEL, OPTIONS, BYE, REFER, NOTIFY
+			Server: kamailio (5.8.2 (x86_64/linux))
+			Content-Type: application/sdp
+			Content-Length: 142
+
+			v=0
+			o=callee 1234 1234 IN IP4 10.0.0.17
+			s=Talk
+			c=IN IP4 10.0.0.17
+			t=0 0
+			m=audio 7078 RTP/AVP 0 8 101
+			a=rtpmap:101 telephone-event/8000
+			""";
+
+	private byte[] fritzBox401;
+	private byte[] kamailio200;
+	private byte[] spoofed200;
+	private SipMessage invite;
+	private SipMessage ok;
+	private final Map<InviteKey, Object> pendingInvites = new ConcurrentHashMap<>();
+	private final ResponseFilter responseFilter = new ResponseFilter();
+
+	@Setup
+	public void setup() {
+		fritzBox401 = bytes(FRITZ_BOX_401);
+		kamailio200 = bytes(KAMAILIO_200);
+		spoofed200 = bytes(KAMAILIO_200.replace("z9hG4bK5a3f8c2e1d", "z9hG4bKspoofed"));
+		invite = parse(bytes(INVITE));
+		ok = parse(kamailio200);
+		// a daemon with many calls in flight
+		for (int i = 0; i < 1000; i++) {
+			pendingInvites.put(new InviteKey("z9hG4bK" + i, i + "@192.168.178.20", "tag" + i), new Object());
+			responseFilter.expect("z9hG4bK" + i, i + "@192.168.178.20", ResponseFilter.UNTIL_EXPIRED);
+		}
+		pendingInvites.put(InviteKey.of(invite), new Object());
+		responseFilter.expect(invite.getViaHeader().getBranch(), invite.getCallIdHeader().getCallId(),
+				ResponseFilter.UNTIL_EXPIRED);
+	}
+
+	@Benchmark
+	public InviteKey parseFritzBox401() {
+		return InviteKey.of(parse(fritzBox401));
+	}
+
+	/**
+	 * Everything the receive path does with a response before mjSIP's own
+	 * listeners see it: parse it and look up the call it belongs to.
+	 */
+	@Benchmark
+	public Object receiveKamailio200() {
+		SipMessage response = parse(kamailio200);
+		return CallService.isInviteResponse(response) ? pendingInvites.get(InviteKey.of(response)) : null;
+	}
+
+	/**
+	 * The {@link ResponseFilter}'s check of a genuine response on its raw bytes,
+	 * before it is parsed, compare with {@link #receiveKamailio200()}.
+	 */
+	@Benchmark
+	public ResponseFilter.Verdict filterKamailio200() {
+		return responseFilter.check(kamailio200, 0, kamailio200.length);
+	}
+
+	/**
+	 * What a spoofed response costs: it is dropped without being parsed.
+	 */
+	@Benchmark
+	public ResponseFilter.Verdict filterSpoofed200() {
+		return responseFilter.check(spoofed200, 0, spoofed200.length);
+	}
+
+	@Benchmark
+	public Object routeParsedResponse() {
+		return pendingInvites.get(InviteKey.of(ok));
+	}
+
+	@Benchmark
+	public boolean isFinalResponseToInvite() {
+		return CallService.isFinalResponseToInvite(ok, invite);
+	}
+
+	@Benchmark
+	public SipMessage buildCancelRequest() {
+		return CallService.buildCancelRequest(invite);
+	}
+
+	@Benchmark
+	public byte[] serializeCancel() {
+		return CallService.buildCancelRequest(invite).getBytes();
+	}
+
+	@Benchmark
+	public byte[] serializeInvite() {
+		return invite.getBytes();
+	}
+
+	private static SipMessage parse(byte[] data) {
+		return new SipMessage(data, 0, data.length);
+	}
+
+	private static byte[] bytes(String message) {
+		return message.replace("\n", "\r\n").getBytes(UTF_8);
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the calls placed with one SIP account, so a PBX that only allows a
+ * couple of simultaneous calls per account is not hammered with INVITEs it
+ * rejects: at most {@code maxCalls} at the same time, started at most
+ * {@code callsPerSecond} per second (see {@link RateLimiter}) and none while
+ * the server asked to be left alone. A 503 response's {@code Retry-After}
+ * pauses new calls for that long, at most {@link #MAX_PAUSE}; calls already
+ * ringing are not affected.
+ */
+final class AccountThrottle {
+
+	/** A misconfigured server must not stop all calls for good. */
+	static final Duration MAX_PAUSE = Duration.ofHours(1);
+
+	/** Returned by {@link #tryAcquire()} if all call slots are taken. */
+	static final long NO_SLOT = Long.MAX_VALUE;
+
+	private final Semaphore calls;
+	private final RateLimiter rateLimiter;
+
+	private volatile long pausedUntil = System.nanoTime();
+
+	/**
+	 * @param callsPerSecond {@code 0} for no limit
+	 * @param burst          how many calls may start at once before
+	 *                       {@code callsPerSecond} applies
+	 */
+	AccountThrottle(int maxCalls, double callsPerSecond, int burst) {
+		if (maxCalls < 1) {
+			throw new IllegalArgumentException("maxCalls must be at least 1 but was " + maxCalls);
+		}
+		this.calls = new Semaphore(maxCalls);
+		this.rateLimiter = callsPerSecond > 0 ? new RateLimiter(callsPerSecond, burst) : null;
+	}
+
+	/**
+	 * Starts a call only if it may be started right now. Every call started must
+	 * be {@link #release(CallResult) released}.
+	 *
+	 * @return {@code 0} if the call may be started, {@link #NO_SLOT} if the
+	 *         maximum number of calls is in progress, otherwise the nanoseconds to
+	 *         wait before trying again
+	 */
+	long tryAcquire() {
+		long pausedNanos = pausedNanos();
+		if (pausedNanos > 0) {
+			return pausedNanos;
+		}
+		if (!calls.tryAcquire()) {
+			return NO_SLOT;
+		}
+		long waitNanos = rateLimiter == null ? 0 : rateLimiter.tryAcquire();
+		if (waitNanos > 0) {
+			calls.release();
+		}
+		return waitNanos;
+	}
+
+	/**
+	 * Frees the slot of a finished call and pauses new calls if the server asked
+	 * for it.
+	 *
+	 * @param result the call's outcome, {@code null} if it failed without one
+	 */
+	void release(CallResult result) {
+		if (result != null && result.retryAfterSeconds() > 0) {
+			pause(Duration.ofSeconds(result.retryAfterSeconds()));
+		}
+		calls.release();
+	}
+
+	synchronized void pause(Duration duration) {
+		Duration pause = duration.compareTo(MAX_PAUSE) > 0 ? MAX_PAUSE : duration;
+		long until = System.nanoTime() + pause.toNanos();
+		if (until - pausedUntil > 0) {
+			pausedUntil = until;
+			EventLog.warn(() -> "THROTTLE: server asked to retry after " + pause.toSeconds()
+					+ " s, not starting new calls until then");
+		}
+	}
+
+	/**
+	 * @return how much longer new calls are paused, zero if they are not
+	 */
+	Duration paused() {
+		return Duration.ofNanos(Math.max(0, pausedNanos()));
+	}
+
+	private long pausedNanos() {
+		return pausedUntil - System.nanoTime();
+	}
+
+}
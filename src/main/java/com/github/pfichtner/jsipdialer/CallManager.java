@@ -0,0 +1,189 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Places many outgoing calls at the same time over one shared
+ * {@link SipEndpoint}. Each call is a lightweight {@link CallService} whose
+ * state the endpoint looks up by Call-ID, so concurrent INVITEs and their
+ * responses never get mixed up. Calls are started with
+ * {@link CallService#callAsync()}, so no thread is parked while they ring.
+ * <p>
+ * Submitted calls wait in a queue of at most {@code queueCapacity} calls and
+ * are started in order as the account's {@link AccountThrottle} allows. If the
+ * server answers a call with a {@code Retry-After}, queued calls wait that
+ * long. Batch, daemon and HTTP mode all dial through this class.
+ */
+public class CallManager implements AutoCloseable {
+
+	/**
+	 * Creates the {@link CallService} of a queued call when it is started.
+	 */
+	@FunctionalInterface
+	interface CallFactory {
+		CallService create(String destinationNumber, String callerName, int timeout);
+	}
+
+	private final CallFactory callFactory;
+	private final AccountThrottle throttle;
+	private final Semaphore queueSlots;
+	private final AtomicInteger activeCalls = new AtomicInteger();
+	private final AtomicBoolean retryScheduled = new AtomicBoolean();
+	private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+	private final Set<CompletableFuture<CallResult>> outstanding = ConcurrentHashMap.newKeySet();
+
+	public CallManager(SipEndpoint endpoint, String username, String password, int maxConcurrentCalls) {
+		this(endpoint, username, password, maxConcurrentCalls, SuccessCriterion.ANSWERED);
+	}
+
+	public CallManager(SipEndpoint endpoint, String username, String password, int maxConcurrentCalls,
+			SuccessCriterion successCriterion) {
+		this(endpoint, username, password, maxConcurrentCalls, successCriterion, RetryPolicy.NONE);
+	}
+
+	public CallManager(SipEndpoint endpoint, String username, String password, int maxConcurrentCalls,
+			SuccessCriterion successCriterion, RetryPolicy retryPolicy) {
+		this((destinationNumber, callerName, timeout) -> new CallService(endpoint, username, password,
+				destinationNumber, callerName, timeout, successCriterion, retryPolicy),
+				new AccountThrottle(maxConcurrentCalls, 0, 1), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param queueCapacity how many calls may wait to be started
+	 */
+	CallManager(CallFactory callFactory, AccountThrottle throttle, int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("queueCapacity must be at least 1 but was " + queueCapacity);
+		}
+		this.callFactory = callFactory;
+		this.throttle = throttle;
+		this.queueSlots = new Semaphore(queueCapacity);
+	}
+
+	/**
+	 * Queues a call, waiting while the queue is full. It is started as soon as
+	 * the throttle allows.
+	 *
+	 * @return the outcome of the call, see {@link CallService#callAsync()}
+	 */
+	public CompletableFuture<CallResult> submit(String destinationNumber, String callerName, int timeoutSeconds)
+			throws InterruptedException {
+		queueSlots.acquire();
+		return enqueue(destinationNumber, callerName, timeoutSeconds, () -> {
+		});
+	}
+
+	/**
+	 * Queues a call unless the queue is full.
+	 *
+	 * @param started run right before the call is started
+	 * @return the outcome of the call, see {@link CallService#callAsync()}
+	 * @throws RejectedExecutionException if the queue is full
+	 */
+	CompletableFuture<CallResult> trySubmit(String destinationNumber, String callerName, int timeoutSeconds,
+			Runnable started) {
+		if (!queueSlots.tryAcquire()) {
+			throw new RejectedExecutionException("too many queued calls");
+		}
+		return enqueue(destinationNumber, callerName, timeoutSeconds, started);
+	}
+
+	private CompletableFuture<CallResult> enqueue(String destinationNumber, String callerName, int timeoutSeconds,
+			Runnable started) {
+		CompletableFuture<CallResult> result = new CompletableFuture<>();
+		outstanding.add(result);
+		result.whenComplete((callResult, e) -> outstanding.remove(result));
+		waiting.add(() -> {
+			started.run();
+			start(destinationNumber, callerName, timeoutSeconds, result);
+		});
+		startWaiting();
+		return result;
+	}
+
+	private void start(String destinationNumber, String callerName, int timeoutSeconds,
+			CompletableFuture<CallResult> result) {
+		activeCalls.incrementAndGet();
+		CompletableFuture<CallResult> call;
+		try {
+			call = callFactory.create(destinationNumber, callerName, timeoutSeconds).callAsync();
+		} catch (RuntimeException e) {
+			call = CompletableFuture.failedFuture(e);
+		}
+		call.whenComplete((callResult, e) -> {
+			activeCalls.decrementAndGet();
+			throttle.release(callResult);
+			startWaiting();
+			if (e == null) {
+				result.complete(callResult);
+			} else {
+				result.completeExceptionally(e);
+			}
+		});
+	}
+
+	// Both submitting and every finished call try to start waiting calls after
+	// changing the queue or the slots, so no queued call can be left behind.
+	// While new calls are paused, a retry is scheduled for when the pause ends.
+	private void startWaiting() {
+		while (!waiting.isEmpty()) {
+			long waitNanos = throttle.tryAcquire();
+			if (waitNanos == AccountThrottle.NO_SLOT) {
+				return;
+			}
+			if (waitNanos > 0) {
+				if (retryScheduled.compareAndSet(false, true)) {
+					CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS).execute(() -> {
+						retryScheduled.set(false);
+						startWaiting();
+					});
+				}
+				return;
+			}
+			Runnable next = waiting.poll();
+			if (next == null) {
+				throttle.release(null);
+			} else {
+				queueSlots.release();
+				next.run();
+			}
+		}
+	}
+
+	/**
+	 * @return how much longer the server asked not to start new calls, zero if
+	 *         it did not
+	 */
+	Duration paused() {
+		return throttle.paused();
+	}
+
+	/**
+	 * @return the number of calls started and not finished yet
+	 */
+	public int activeCalls() {
+		return activeCalls.get();
+	}
+
+	/**
+	 * Waits for all submitted calls to finish. The endpoint is not closed, it is
+	 * owned by the caller.
+	 */
+	@Override
+	public void close() {
+		CompletableFuture.allOf(outstanding.toArray(CompletableFuture[]::new))
+				.handle((ignored, e) -> null)
+				.join();
+	}
+
+}
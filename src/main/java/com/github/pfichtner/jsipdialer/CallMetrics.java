@@ -0,0 +1,162 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.pfichtner.jsipdialer.CallResult.DecidedBy;
+
+/**
+ * Counters and latency histograms of all calls placed by this process, updated
+ * lock-free from {@link CallService} and {@link SipEndpoint} and exported in
+ * the Prometheus text format, see {@link #toPrometheus()}. A call placed again
+ * on another server or retried after a failure is still one call, its
+ * latencies are those of its last attempt.
+ */
+final class CallMetrics {
+
+	static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final CallMetrics GLOBAL = new CallMetrics();
+
+	private final LongAdder started = new LongAdder();
+	private final LongAdder ended = new LongAdder();
+	private final LongAdder succeeded = new LongAdder();
+	private final LongAdder cancelsSent = new LongAdder();
+	private final LongAdder inviteRetransmissions = new LongAdder();
+	private final LongAdder unmatchedResponsesDropped = new LongAdder();
+	private final LongAdder malformedResponsesDropped = new LongAdder();
+	private final Map<Integer, LongAdder> byStatusCode = new ConcurrentHashMap<>();
+	private final Map<DecidedBy, LongAdder> byDecision = new EnumMap<>(DecidedBy.class);
+	private final LatencyHistogram postDialDelay = new LatencyHistogram();
+	private final LatencyHistogram timeToAnswer = new LatencyHistogram();
+	private final LatencyHistogram callDuration = new LatencyHistogram();
+
+	CallMetrics() {
+		// filled once, so the map is only read afterwards
+		for (DecidedBy decidedBy : DecidedBy.values()) {
+			byDecision.put(decidedBy, new LongAdder());
+		}
+	}
+
+	/**
+	 * @return the metrics all calls of this process are recorded in
+	 */
+	static CallMetrics global() {
+		return GLOBAL;
+	}
+
+	void callStarted() {
+		started.increment();
+	}
+
+	/**
+	 * An INVITE was sent again with the branch of one already sent, i.e. mjSIP's
+	 * transaction retransmitted it because no response arrived in time.
+	 */
+	void inviteRetransmitted() {
+		inviteRetransmissions.increment();
+	}
+
+	/**
+	 * A response answering no request sent was dropped, see
+	 * {@link ResponseFilter}.
+	 */
+	void unmatchedResponseDropped() {
+		unmatchedResponsesDropped.increment();
+	}
+
+	/**
+	 * A response without a top Via branch or a Call-ID was dropped, see
+	 * {@link ResponseFilter}.
+	 */
+	void malformedResponseDropped() {
+		malformedResponsesDropped.increment();
+	}
+
+	void callEnded(CallResult result) {
+		ended.increment();
+		if (result.success()) {
+			succeeded.increment();
+		}
+		if (result.cancelSent()) {
+			cancelsSent.increment();
+		}
+		byStatusCode.computeIfAbsent(result.statusCode(), code -> new LongAdder()).increment();
+		byDecision.get(result.decidedBy()).increment();
+		result.postDialDelay().ifPresent(postDialDelay::record);
+		if (result.success()) {
+			result.timeToFinalResponse().ifPresent(timeToAnswer::record);
+		}
+		callDuration.record(result.totalDuration());
+	}
+
+	String toPrometheus() {
+		StringBuilder out = new StringBuilder(8192);
+		try {
+			writePrometheus(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	void writePrometheus(Appendable out) throws IOException {
+		counter(out, "jsipdialer_calls_started_total", "Calls placed, failovers and retries not counted again.",
+				started.sum());
+		counter(out, "jsipdialer_calls_ended_total", "Calls torn down.", ended.sum());
+		counter(out, "jsipdialer_calls_succeeded_total", "Calls the callee accepted.", succeeded.sum());
+		gauge(out, "jsipdialer_calls_in_flight", "Calls placed but not yet torn down.",
+				started.sum() - ended.sum());
+		header(out, "jsipdialer_call_outcomes_total",
+				"Ended calls by final SIP status code, 0 if none was received.", "counter");
+		for (Map.Entry<Integer, LongAdder> entry : new TreeMap<>(byStatusCode).entrySet()) {
+			sample(out, "jsipdialer_call_outcomes_total{status_code=\"" + entry.getKey() + "\"}",
+					entry.getValue().sum());
+		}
+		header(out, "jsipdialer_call_decisions_total", "Ended calls by the path that decided their outcome.",
+				"counter");
+		for (Map.Entry<DecidedBy, LongAdder> entry : byDecision.entrySet()) {
+			sample(out, "jsipdialer_call_decisions_total{decided_by=\"" + entry.getKey().name().toLowerCase()
+					+ "\"}", entry.getValue().sum());
+		}
+		counter(out, "jsipdialer_cancels_sent_total", "CANCELs sent to stop a callee from ringing.",
+				cancelsSent.sum());
+		counter(out, "jsipdialer_invite_retransmissions_total", "INVITEs retransmitted for lack of a response.",
+				inviteRetransmissions.sum());
+		header(out, "jsipdialer_responses_dropped_total",
+				"Responses dropped unparsed because they answer no request sent, by reason.", "counter");
+		sample(out, "jsipdialer_responses_dropped_total{reason=\"unmatched\"}", unmatchedResponsesDropped.sum());
+		sample(out, "jsipdialer_responses_dropped_total{reason=\"malformed\"}", malformedResponsesDropped.sum());
+		postDialDelay.writePrometheus(out, "jsipdialer_post_dial_delay_seconds",
+				"Time from sending the last INVITE until the callee started ringing (180/183).");
+		timeToAnswer.writePrometheus(out, "jsipdialer_time_to_answer_seconds",
+				"Time from sending the last INVITE until the callee accepted.");
+		callDuration.writePrometheus(out, "jsipdialer_call_duration_seconds",
+				"Time from placing a call's last attempt until it was torn down.");
+	}
+
+	private static void counter(Appendable out, String name, String help, long value) throws IOException {
+		header(out, name, help, "counter");
+		sample(out, name, value);
+	}
+
+	private static void gauge(Appendable out, String name, String help, long value) throws IOException {
+		header(out, name, help, "gauge");
+		sample(out, name, value);
+	}
+
+	private static void header(Appendable out, String name, String help, String type) throws IOException {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(Appendable out, String series, long value) throws IOException {
+		out.append(series).append(' ').append(String.valueOf(value)).append('\n');
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The outcome of one call. All timestamps are {@link System#nanoTime()} values
+ * and therefore only meaningful relative to each other; phases that were never
+ * reached are {@link #NOT_REACHED}.
+ *
+ * @param success            whether the callee accepted the call
+ * @param statusCode         the final SIP status code, 408 if mjSIP's
+ *                           transaction timed out, 0 if no final response was
+ *                           received before the call was torn down, the
+ *                           provisional one if it met the call's
+ *                           {@link SuccessCriterion}
+ * @param reason             human readable reason, {@code OK} on success
+ * @param decidedBy          which path decided the outcome
+ * @param cancelSent         whether a CANCEL was sent to stop the callee from
+ *                           ringing
+ * @param startedAt          when the call was started
+ * @param inviteSentAt       when the first INVITE went on the wire
+ * @param firstProvisionalAt when the first 1xx response (100/180/183) arrived
+ * @param ringingAt          when the first 180 or 183 arrived
+ * @param finalResponseAt    when the final response arrived, auth challenges
+ *                           (401/407) excluded
+ * @param endedAt            when the call had been torn down
+ * @param retryAfterSeconds  the {@code Retry-After} of a 503 response, how
+ *                           long the server asked not to be sent new calls,
+ *                           {@code 0} if it did not
+ */
+public record CallResult(boolean success, int statusCode, String reason, DecidedBy decidedBy, boolean cancelSent,
+		long startedAt, long inviteSentAt, long firstProvisionalAt, long ringingAt, long finalResponseAt,
+		long endedAt, int retryAfterSeconds) {
+
+	public static final long NOT_REACHED = Long.MIN_VALUE;
+
+	public enum DecidedBy {
+		/** One of mjSIP's call callbacks (accepted, refused, timeout, ...). */
+		DIALOG_LISTENER,
+		/**
+		 * A final response mjSIP's dialog did not report, e.g. the answer to the
+		 * re-INVITE sent after a 401 challenge.
+		 */
+		FALLBACK,
+		/** Nothing decided before the call's timeout expired. */
+		TIMEOUT,
+		/**
+		 * A provisional response met the call's {@link SuccessCriterion}, the call
+		 * was cancelled afterwards.
+		 */
+		SUCCESS_CRITERION,
+		/**
+		 * Not placed at all, the circuit breaker of the destination or of all
+		 * servers was open, see {@link CircuitBreakers}.
+		 */
+		CIRCUIT_OPEN
+	}
+
+	/**
+	 * @return the time from sending the INVITE until the callee started ringing
+	 *         (180/183)
+	 */
+	public Optional<Duration> postDialDelay() {
+		return between(inviteSentAt, ringingAt);
+	}
+
+	public Optional<Duration> timeToFirstProvisional() {
+		return between(inviteSentAt, firstProvisionalAt);
+	}
+
+	public Optional<Duration> timeToFinalResponse() {
+		return between(inviteSentAt, finalResponseAt);
+	}
+
+	public Duration totalDuration() {
+		return Duration.ofNanos(endedAt - startedAt);
+	}
+
+	private static Optional<Duration> between(long from, long to) {
+		return from == NOT_REACHED || to == NOT_REACHED ? Optional.empty() : Optional.of(Duration.ofNanos(to - from));
+	}
+
+}
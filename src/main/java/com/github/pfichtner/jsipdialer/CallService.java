@@ -1,9 +1,13 @@
 package com.github.pfichtner.jsipdialer;
 
-import java.util.Map;
+import static com.github.pfichtner.jsipdialer.CallResult.NOT_REACHED;
+
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import org.mjsip.sdp.MediaDescriptor;
@@ -19,39 +23,29 @@ import org.mjsip.sip.call.SipUser;
 import org.mjsip.sip.header.CSeqHeader;
 import org.mjsip.sip.header.MaxForwardsHeader;
 import org.mjsip.sip.header.RequestLine;
-import org.mjsip.sip.header.ViaHeader;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipMethods;
-import org.mjsip.sip.provider.ConnectionId;
-import org.mjsip.sip.provider.SipConfig;
-import org.mjsip.sip.provider.SipProvider;
-import org.mjsip.time.ConfiguredScheduler;
-import org.mjsip.time.SchedulerConfig;
 
 public class CallService {
 
 	public static final int DEFAULT_LOCAL_PORT = 15062;
 
-	private final String serverAddress;
-	private final int serverPort;
 	private final String username;
 	private final String password;
 	private final String destinationNumber;
 	private final String callerName;
 	private final int timeoutSeconds;
-	private final String transport;
-	private final int localPort;
-	private final String viaAddress;
-
-	private volatile boolean success;
-	private volatile String reason;
-	private volatile boolean terminated;
-	private volatile boolean remoteResponded;
-
-	private CountDownLatch latch;
-	private SipProvider sipProvider;
-	private final Map<String, SipMessage> sentInvites = new ConcurrentHashMap<>();
-	private volatile SipMessage lastSentInvite;
+	// exactly one of them is set, see the constructors
+	private final SipEndpoint.Options endpointOptions;
+	private final SipEndpoint endpoint;
+
+	private final SuccessCriterion successCriterion;
+	private final RetryPolicy retryPolicy;
+	// the state of the current attempt, see attempt()
+	private volatile CallState state;
+	private volatile CallResult result;
+	// whether the call has been counted as started, see dial()
+	private volatile boolean placed;
 
 	public CallService(String serverAddress, int serverPort, String username, String password,
 			String destinationNumber, String callerName, int timeoutSeconds, String transport) {
@@ -68,58 +62,218 @@ public class CallService {
 	public CallService(String serverAddress, int serverPort, String username, String password,
 			String destinationNumber, String callerName, int timeoutSeconds, String transport, int localPort,
 			String viaAddress) {
-		this.serverAddress = serverAddress;
-		this.serverPort = serverPort;
+		this(SipEndpoint.Options.of(serverAddress, serverPort, transport).withLocalPort(localPort)
+				.withViaAddress(viaAddress), username, password, destinationNumber, callerName, timeoutSeconds,
+				SuccessCriterion.ANSWERED, RetryPolicy.NONE);
+	}
+
+	/**
+	 * Creates a call that binds its own {@link SipEndpoint} and closes it when the
+	 * call ends.
+	 *
+	 * @param retryPolicy when a failed call is placed again, every attempt with
+	 *                    the full {@code timeoutSeconds}
+	 */
+	public CallService(SipEndpoint.Options endpointOptions, String username, String password,
+			String destinationNumber, String callerName, int timeoutSeconds, SuccessCriterion successCriterion,
+			RetryPolicy retryPolicy) {
+		this(endpointOptions, null, username, password, destinationNumber, callerName, timeoutSeconds,
+				successCriterion, retryPolicy);
+	}
+
+	/**
+	 * Creates a lightweight call bound to an already running {@link SipEndpoint}.
+	 * The endpoint is not closed when the call ends so it can be reused for
+	 * subsequent calls.
+	 *
+	 * @param retryPolicy when a failed call is placed again, every attempt with
+	 *                    the full {@code timeoutSeconds}
+	 */
+	public CallService(SipEndpoint endpoint, String username, String password, String destinationNumber,
+			String callerName, int timeoutSeconds, SuccessCriterion successCriterion, RetryPolicy retryPolicy) {
+		this(null, endpoint, username, password, destinationNumber, callerName, timeoutSeconds, successCriterion,
+				retryPolicy);
+	}
+
+	private CallService(SipEndpoint.Options endpointOptions, SipEndpoint endpoint, String username,
+			String password, String destinationNumber, String callerName, int timeoutSeconds,
+			SuccessCriterion successCriterion, RetryPolicy retryPolicy) {
+		this.endpointOptions = endpointOptions;
+		this.endpoint = endpoint;
 		this.username = username;
 		this.password = password;
 		this.destinationNumber = destinationNumber;
 		this.callerName = callerName;
 		this.timeoutSeconds = timeoutSeconds;
-		this.transport = transport;
-		this.localPort = localPort;
-		this.viaAddress = viaAddress;
+		this.successCriterion = successCriterion;
+		this.retryPolicy = retryPolicy;
+		this.state = new CallState(username, password, successCriterion);
 	}
 
+	/**
+	 * Places the call and blocks until it has been answered, refused or timed out.
+	 *
+	 * @see #callAsync()
+	 */
 	public boolean call() throws Exception {
-		SipConfig sipConfig = new SipConfig();
-		sipConfig.setTransportProtocols(new String[] { transport });
-		sipConfig.setOutboundProxy(new SipURI(serverAddress, serverPort));
-		sipConfig.setHostPort(localPort);
-		if (viaAddress != null && !viaAddress.isBlank()) {
-			sipConfig.setViaAddrIPv4(viaAddress);
+		try {
+			return callAsync().get().success();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception cause ? cause : e;
 		}
-		sipConfig.normalize();
-
-		SchedulerConfig schedulerConfig = new SchedulerConfig();
-		// Override sendMessage to capture the actual INVITE that goes on the wire.
-		// mjSIP's TransactionClient.request() replaces the Via header with a new branch
-		// (via SipProvider.pickBranch()) before sending, so the SipMessage held by
-		// ExtendedCall/InviteDialog has a different branch than what was actually sent.
-		// When we later build a CANCEL on timeout, it must carry the same Via branch as
-		// the wire INVITE — otherwise Kamailio rejects it with "RFC3261 transaction
-		// matching failed". Capturing the message here is the simplest way to get the
-		// correct branch without reflection into Transaction internals.
-		sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig)) {
-			@Override
-			public ConnectionId sendMessage(SipMessage msg) {
-				if (msg.isInvite()) {
-					lastSentInvite = msg;
-					ViaHeader via = msg.getViaHeader();
-					if (via != null && via.getBranch() != null) {
-						sentInvites.put(via.getBranch(), msg);
-					}
+	}
+
+	/**
+	 * Places the call without blocking the calling thread. The returned future is
+	 * completed by the first mjSIP call callback or fallback response that decides
+	 * the outcome, or by the timeout, and only after the call has been torn down
+	 * (CANCEL sent if needed, endpoint released or closed).
+	 *
+	 * @return the outcome of the call, also available from {@link #getResult()}
+	 *         once the future is done
+	 */
+	public CompletableFuture<CallResult> callAsync() {
+		if (endpoint != null) {
+			return callAsync(endpoint);
+		}
+		SipEndpoint ownEndpoint = new SipEndpoint(endpointOptions);
+		try {
+			// Closing halts the provider and its scheduler, so this must not run on
+			// one of their threads which may have completed the outcome.
+			return callAsync(ownEndpoint).whenCompleteAsync((callResult, e) -> ownEndpoint.close());
+		} catch (RuntimeException e) {
+			ownEndpoint.close();
+			throw e;
+		}
+	}
+
+	// The call is recorded in the CallMetrics once with its final result, no
+	// matter how often it was placed again on another server or retried.
+	private CompletableFuture<CallResult> callAsync(SipEndpoint endpoint) {
+		return placeCall(endpoint, 1).thenApply(callResult -> {
+			result = callResult;
+			if (!placed) {
+				// failed fast, no INVITE was sent
+				CallMetrics.global().callStarted();
+			}
+			CallMetrics.global().callEnded(callResult);
+			return callResult;
+		});
+	}
+
+	/**
+	 * Places the call on the servers, see {@link #attempt}. If it failed in a way
+	 * the {@link RetryPolicy} retries, it is placed again after a backoff. With
+	 * circuit breakers, a call to a destination or to servers whose breaker is
+	 * open fails fast instead.
+	 */
+	private CompletableFuture<CallResult> placeCall(SipEndpoint endpoint, int attemptNumber) {
+		CallState attemptState = attemptNumber == 1 ? state : new CallState(username, password, successCriterion);
+		List<SipTarget> targets = endpoint.targets();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		if (!retryPolicy.guardsCalls()) {
+			return attempt(endpoint, targets, 0, deadline, attemptState);
+		}
+		CircuitBreakers breakers = endpoint.breakers();
+		String destination = CircuitBreakers.destination(destinationNumber);
+		if (!breakers.allows(destination)) {
+			return failFast(attemptState, "Circuit open for " + destinationNumber);
+		}
+		int first = nextAllowed(breakers, targets, 0);
+		if (first == targets.size()) {
+			return failFast(attemptState, "Circuit open for all SIP servers");
+		}
+		return attempt(endpoint, targets, first, deadline, attemptState).whenComplete((callResult, e) -> {
+			if (e == null && !retryPolicy.isRetryable(callResult)) {
+				breakers.succeeded(destination);
+			} else {
+				breakers.failed(destination);
+			}
+		}).thenCompose(callResult -> {
+			if (attemptNumber >= retryPolicy.maxAttempts() || !retryPolicy.isRetryable(callResult)) {
+				return CompletableFuture.completedFuture(callResult);
+			}
+			Duration backoff = retryPolicy.backoff(attemptNumber, callResult, ThreadLocalRandom.current());
+			EventLog.warn(() -> "CALL: failed with " + callResult.statusCode() + ", retrying in "
+					+ backoff.toMillis() + " ms (attempt " + (attemptNumber + 1) + " of "
+					+ retryPolicy.maxAttempts() + ")");
+			return CompletableFuture.supplyAsync(() -> attemptNumber + 1, CompletableFuture
+					.delayedExecutor(backoff.toMillis(), TimeUnit.MILLISECONDS, endpoint.callExecutor()))
+					.thenCompose(next -> placeCall(endpoint, next));
+		});
+	}
+
+	private CompletableFuture<CallResult> failFast(CallState attemptState, String reason) {
+		EventLog.warn(() -> "CALL: " + reason + ", not calling");
+		state = attemptState;
+		attemptState.circuitOpen(reason);
+		return CompletableFuture.completedFuture(attemptState.toResult());
+	}
+
+	/**
+	 * @return the index of the first of {@code targets} from {@code index} on
+	 *         whose circuit breaker allows a call, {@code targets.size()} if there
+	 *         is none
+	 */
+	private static int nextAllowed(CircuitBreakers breakers, List<SipTarget> targets, int index) {
+		while (index < targets.size() && !breakers.allows(CircuitBreakers.server(targets.get(index)))) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Places the call on {@code targets.get(index)}. If that server does not
+	 * answer at all or is overloaded (see {@link #isServerFailure(CallResult)}) the
+	 * call is placed again on the next one, as long as the call's timeout has not
+	 * expired (RFC 3263 section 4.3). Every attempt is a call of its own with a new
+	 * Call-ID.
+	 */
+	private CompletableFuture<CallResult> attempt(SipEndpoint endpoint, List<SipTarget> targets, int index,
+			long deadline, CallState attemptState) {
+		state = attemptState;
+		SipTarget target = targets.get(index);
+		long timeoutMillis = timeoutSeconds > 0
+				? Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))
+				: 0;
+		return dial(endpoint, attemptState, target, timeoutMillis).thenCompose(callResult -> {
+			boolean serverFailed = isServerFailure(callResult);
+			if (retryPolicy.guardsCalls()) {
+				if (serverFailed) {
+					endpoint.breakers().failed(CircuitBreakers.server(target));
+				} else {
+					endpoint.breakers().succeeded(CircuitBreakers.server(target));
 				}
-				return super.sendMessage(msg);
 			}
-		};
+			if (!serverFailed || timeoutSeconds > 0 && deadline - System.nanoTime() <= 0) {
+				return CompletableFuture.completedFuture(callResult);
+			}
+			int next = retryPolicy.guardsCalls() ? nextAllowed(endpoint.breakers(), targets, index + 1) : index + 1;
+			if (next == targets.size()) {
+				return CompletableFuture.completedFuture(callResult);
+			}
+			EventLog.warn(() -> "CALL: " + target + " failed with " + callResult.statusCode() + ", trying "
+					+ targets.get(next));
+			return attempt(endpoint, targets, next, deadline, new CallState(username, password, successCriterion));
+		});
+	}
 
-		CountDownLatch latch = new CountDownLatch(1);
-		this.latch = latch;
+	/**
+	 * @return whether the server rather than the callee failed: it answered
+	 *         {@code 503 Service Unavailable} or nothing at all until mjSIP's
+	 *         INVITE transaction timed out (Timer B, 64*T1)
+	 */
+	static boolean isServerFailure(CallResult result) {
+		return result.statusCode() == 503 || result.statusCode() == 408
+				&& result.firstProvisionalAt() == NOT_REACHED && result.finalResponseAt() == NOT_REACHED;
+	}
 
-		// Promiscuous listeners fire BEFORE transaction/dialog listeners.
-		// We use this to both log incoming messages (for debugging) and as a
-		// fallback to detect final responses to our INVITE when mjSIP's own
-		// transaction/dialog listeners don't fire.
+	private CompletableFuture<CallResult> dial(SipEndpoint endpoint, CallState state, SipTarget target,
+			long timeoutMillis) {
+		// Responses are routed to this call's state by the endpoint. Besides the
+		// dialog listener below, the state uses them as a fallback to detect final
+		// responses to our INVITE when mjSIP's own transaction/dialog listeners
+		// don't fire.
 		//
 		// With some SIP proxies (e.g. FritzBox), the 401 challenge causes a
 		// re-INVITE with authentication. The responses to the re-INVITE (200 OK,
@@ -127,164 +281,114 @@ public class CallService {
 		// transaction listener — so mjSIP's onCallAccepted/onCallRefused never
 		// fire. Without this fallback, the program would wait for the full
 		// timeout instead of exiting when the callee responds.
-		sipProvider.addPromiscuousListener((sipProvider, msg) -> {
-			if (msg.isResponse()) {
-				int code = msg.getStatusLine().getCode();
-				String reason = msg.getStatusLine().getReason();
-				System.err.println("SIP RECV: " + code + " " + reason);
-				System.err.flush();
-				// Fallback: if we see a final response (2xx/4xx except 401/407/5xx/6xx)
-				// that matches our INVITE and the dialog listener hasn't already
-				// handled it, handle it here.
-				// 401/407 are auth challenges handled by ExtendedInviteDialog
-				// (which re-sends the INVITE with Authorization), so we must NOT
-				// treat them as final — doing so would exit before the re-INVITE.
-				// The response is only accepted if it is provably a response to an
-				// INVITE we actually sent: its top Via branch, Call-ID and From tag
-				// must all match one of our captured wire INVITEs. Matching the
-				// Call-ID alone would let an attacker on the network forge a final
-				// response and make call() succeed or fail without any call taking
-				// place; the Via branch and From tag are unguessable random values
-				// chosen by mjSIP per request, so only the real endpoint (which
-				// echoes them back) can produce a matching response.
-				if (!remoteResponded && code >= 200 && code != 401 && code != 407) {
-					sentInvites.values().stream()
-							.filter(invite -> isFinalResponseToInvite(msg, invite))
-							.findFirst()
-							.ifPresent(invite -> {
-								System.err.println("CALL: fallback detected final response " + code);
-								System.err.flush();
-								remoteResponded = true;
-								if (code >= 200 && code < 300) {
-									success = true;
-									CallService.this.reason = "OK";
-								} else {
-									success = false;
-									CallService.this.reason = code + " " + reason;
-								}
-								latch.countDown();
-							});
-				}
-			} else {
-				System.err.println("SIP RECV: " + msg.getRequestLine().getMethod() + " "
-						+ msg.getRequestLine().getAddress());
-				System.err.flush();
-			}
-		});
-
 		var listener = new CallListenerAdapter() {
 			@Override
 			public void onCallAccepted(Call call, SdpMessage sdp, SipMessage resp) {
-				System.err.println("CALL: onCallAccepted");
-				System.err.flush();
-				remoteResponded = true;
-				success = true;
-				CallService.this.reason = "OK";
-				latch.countDown();
+				EventLog.info(() -> "CALL: onCallAccepted");
+				state.remoteResponded(true, "OK");
 			}
 
 			@Override
 			public void onCallRefused(Call call, String reason, SipMessage resp) {
-				System.err.println("CALL: onCallRefused: " + reason);
-				System.err.flush();
-				remoteResponded = true;
-				success = false;
-				CallService.this.reason = reason;
-				latch.countDown();
+				EventLog.info(() -> "CALL: onCallRefused: " + reason);
+				state.remoteResponded(false, reason);
 			}
 
 			@Override
 			public void onCallRedirected(Call call, String reason, java.util.Vector contactList, SipMessage resp) {
-				System.err.println("CALL: onCallRedirected: " + reason);
-				System.err.flush();
-				remoteResponded = true;
-				success = false;
-				CallService.this.reason = "Redirected: " + reason;
-				latch.countDown();
+				EventLog.info(() -> "CALL: onCallRedirected: " + reason);
+				state.remoteResponded(false, "Redirected: " + reason);
 			}
 
 			@Override
 			public void onCallTimeout(Call call) {
-				System.err.println("CALL: onCallTimeout");
-				System.err.flush();
-				success = false;
-				CallService.this.reason = "Request Timeout";
-				latch.countDown();
+				EventLog.info(() -> "CALL: onCallTimeout");
+				state.timedOut("Request Timeout");
 			}
 
 			@Override
 			public void onCallCancel(Call call, SipMessage cancel) {
-				System.err.println("CALL: onCallCancel");
-				System.err.flush();
-				remoteResponded = true;
-				latch.countDown();
+				EventLog.info(() -> "CALL: onCallCancel");
+				state.remoteEnded();
 			}
 
 			@Override
 			public void onCallBye(Call call, SipMessage bye) {
-				System.err.println("CALL: onCallBye");
-				System.err.flush();
-				remoteResponded = true;
-				latch.countDown();
+				EventLog.info(() -> "CALL: onCallBye");
+				state.remoteEnded();
 			}
 
 			@Override
 			public void onCallClosed(Call call, SipMessage resp) {
-				System.err.println("CALL: onCallClosed");
-				System.err.flush();
-				remoteResponded = true;
-				latch.countDown();
+				EventLog.info(() -> "CALL: onCallClosed");
+				state.remoteEnded();
 			}
 		};
 
-		SipUser sipUser = new SipUser(new NameAddress(new SipURI(username, serverAddress)), username, serverAddress,
-				password);
+		String domain = endpoint.serverAddress();
+		SipUser sipUser = new SipUser(new NameAddress(new SipURI(username, domain)), username, domain, password);
 
-		ExtendedCall call = new ExtendedCall(sipProvider, sipUser, listener);
+		ExtendedCall call = new ExtendedCall(endpoint.sipProvider(), sipUser, listener);
 
-		Thread shutdownHook = new Thread(this::terminateCall, "sip-shutdown");
+		Thread shutdownHook = new Thread(() -> terminateCall(endpoint, state), "sip-shutdown");
 		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		Runnable cleanup = () -> {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException ignored) {
+			}
+			endpoint.release(state);
+		};
 
 		try {
-			if (timeoutSeconds > 0) {
-				sipProvider.scheduler().schedule(timeoutSeconds * 1000L, this::terminateCall);
+			if (timeoutMillis > 0) {
+				CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS, endpoint.callExecutor())
+						.execute(() -> terminateCall(endpoint, state));
 			}
 
-			NameAddress callee = new NameAddress(new SipURI(destinationNumber, serverAddress));
+			NameAddress callee = new NameAddress(new SipURI(destinationNumber, domain));
 
 			NameAddress caller = callerName != null
-					? new NameAddress(callerName, new SipURI(username, serverAddress))
-					: new NameAddress(new SipURI(username, serverAddress));
-
-			SdpMessage sdpOffer = SdpMessage.createSdpMessage(username, "0.0.0.0");
-			sdpOffer = sdpOffer.addMediaDescriptor(new MediaDescriptor(
-					new MediaField("audio", 9, 1, "RTP/AVP", "0"),
-					new ConnectionField(ConnectionField.addressType("0.0.0.0"), "0.0.0.0"),
-					java.util.Collections.emptyList()));
-
-			call.call(callee, caller, sdpOffer);
-
-			long awaitSeconds = timeoutSeconds > 0 ? timeoutSeconds + 5 : 300;
-			latch.await(awaitSeconds, TimeUnit.SECONDS);
-
-			terminateCall();
+					? new NameAddress(callerName, new SipURI(username, domain))
+					: new NameAddress(new SipURI(username, domain));
+
+			SdpMessage sdpOffer = SdpMessage.createSdpMessage(username, "0.0.0.0").addMediaDescriptor(
+					new MediaDescriptor(
+							new MediaField("audio", 9, 1, "RTP/AVP", "0"),
+							new ConnectionField(ConnectionField.addressType("0.0.0.0"), "0.0.0.0"),
+							java.util.Collections.emptyList()));
+
+			state.routeTo(target);
+			endpoint.dial(state, () -> call.call(callee, caller, sdpOffer));
+		} catch (RuntimeException e) {
+			cleanup.run();
+			throw e;
+		}
 
-			return success;
-		} finally {
-			try {
-				Runtime.getRuntime().removeShutdownHook(shutdownHook);
-			} catch (IllegalStateException ignored) {
-			}
-			sipProvider.halt();
-			sipProvider.scheduler().scheduler().shutdownNow();
+		if (!placed) {
+			placed = true;
+			CallMetrics.global().callStarted();
 		}
+
+		// Safety net in case neither a SIP callback nor the scheduled timeout
+		// completes the outcome.
+		long awaitMillis = timeoutMillis > 0 ? timeoutMillis + 5000 : 300_000;
+		return state.outcome()
+				.completeOnTimeout(false, awaitMillis, TimeUnit.MILLISECONDS)
+				.thenApplyAsync(success -> {
+					try {
+						terminateCall(endpoint, state);
+					} finally {
+						cleanup.run();
+					}
+					return state.toResult();
+				}, endpoint.callExecutor());
 	}
 
-	private void terminateCall() {
-		if (terminated) {
+	private void terminateCall(SipEndpoint endpoint, CallState state) {
+		if (!state.markTerminated()) {
 			return;
 		}
-		terminated = true;
 		// Only send CANCEL if the remote hasn't responded yet (INVITE still pending).
 		// If the callee accepted, refused, cancelled, sent BYE, or the call was closed,
 		// remoteResponded is true and sending a CANCEL would be wrong — it would tear
@@ -292,19 +396,17 @@ public class CallService {
 		// transaction. onCallTimeout does NOT set remoteResponded because the SIP
 		// transaction timeout means the callee never responded, so we still need to
 		// send CANCEL to stop the callee from ringing.
-		if (!remoteResponded) {
-			System.err.println("CALL: terminating — sending CANCEL (remote did not respond)");
-			System.err.flush();
-			sendCancel();
+		if (!state.hasRemoteResponded()) {
+			EventLog.info(() -> "CALL: terminating — sending CANCEL (remote did not respond)");
+			sendCancel(endpoint, state);
 		} else {
-			System.err.println("CALL: terminating — remote already responded, no CANCEL needed");
-			System.err.flush();
+			EventLog.info(() -> "CALL: terminating — remote already responded, no CANCEL needed");
 		}
-		// Release the latch in case no SIP callback fired (e.g., proxy doesn't
+		// Complete the outcome in case no SIP callback fired (e.g., proxy doesn't
 		// route the response back to us). Without this, call() would block
-		// until the latch timeout (timeoutSeconds + 5), which could be much
+		// until the safety timeout (timeoutSeconds + 5), which could be much
 		// longer than the actual timeout.
-		latch.countDown();
+		state.release();
 	}
 
 	// We build the CANCEL manually rather than calling InviteDialog.cancel() or
@@ -315,12 +417,13 @@ public class CallService {
 	// TransactionClient would replace the branch again, causing the same
 	// branch-mismatch problem. Building from the captured wire INVITE ensures
 	// the CANCEL carries the exact Via branch Kamailio expects.
-	private void sendCancel() {
-		SipMessage invite = lastSentInvite;
+	private void sendCancel(SipEndpoint endpoint, CallState state) {
+		SipMessage invite = state.lastSentInvite();
 		if (invite == null) {
 			return;
 		}
-		sipProvider.sendMessage(buildCancelRequest(invite));
+		endpoint.sipProvider().sendMessage(buildCancelRequest(invite));
+		state.cancelSent();
 	}
 
 	static SipMessage buildCancelRequest(SipMessage inviteReq) {
@@ -339,10 +442,17 @@ public class CallService {
 	}
 
 	public String getReason() {
-		return reason;
+		return state.reason();
+	}
+
+	/**
+	 * @return the outcome of the call or {@code null} if it has not finished yet
+	 */
+	public CallResult getResult() {
+		return result;
 	}
 
-	private static boolean isInviteResponse(SipMessage msg) {
+	static boolean isInviteResponse(SipMessage msg) {
 		return Optional.of(msg)
 				.map(SipMessage::getCSeqHeader)
 				.map(CSeqHeader::getMethod)
@@ -351,27 +461,8 @@ public class CallService {
 	}
 
 	static boolean isFinalResponseToInvite(SipMessage response, SipMessage invite) {
-		return isInviteResponse(response)
-				&& sameCallId(response, invite)
-				&& sameViaBranch(response, invite)
-				&& sameFromTag(response, invite);
-	}
-
-	private static boolean sameCallId(SipMessage a, SipMessage b) {
-		var ca = a.getCallIdHeader();
-		var cb = b.getCallIdHeader();
-		return ca != null && cb != null && ca.getCallId().equals(cb.getCallId());
-	}
-
-	private static boolean sameViaBranch(SipMessage a, SipMessage b) {
-		ViaHeader va = a.getViaHeader();
-		ViaHeader vb = b.getViaHeader();
-		return va != null && vb != null && va.getBranch() != null && va.getBranch().equals(vb.getBranch());
+		InviteKey inviteKey = InviteKey.of(invite);
+		return isInviteResponse(response) && inviteKey != null && inviteKey.equals(InviteKey.of(response));
 	}
 
-	private static boolean sameFromTag(SipMessage a, SipMessage b) {
-		String ta = a.getFromHeader() == null ? null : a.getFromHeader().getTag();
-		String tb = b.getFromHeader() == null ? null : b.getFromHeader().getTag();
-		return ta != null && ta.equals(tb);
-	}
 }
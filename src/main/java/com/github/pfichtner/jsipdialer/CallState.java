@@ -0,0 +1,264 @@
+package com.github.pfichtner.jsipdialer;
+
+import static com.github.pfichtner.jsipdialer.CallResult.NOT_REACHED;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.message.SipMessage;
+
+import com.github.pfichtner.jsipdialer.CallResult.DecidedBy;
+
+/**
+ * The mutable outcome of a single outgoing call. {@link SipEndpoint} keeps one
+ * instance per Call-ID so that responses arriving on the shared provider's
+ * receive thread are applied to the right call, no matter how many calls are in
+ * flight at the same time.
+ */
+final class CallState {
+
+	private final CompletableFuture<Boolean> outcome = new CompletableFuture<>();
+	private final AtomicBoolean terminated = new AtomicBoolean();
+	private final Set<InviteKey> inviteKeys = ConcurrentHashMap.newKeySet();
+	private final Set<String> callIds = ConcurrentHashMap.newKeySet();
+	private final long startedAt = System.nanoTime();
+	private final String username;
+	private final String password;
+	private final SuccessCriterion successCriterion;
+
+	private volatile boolean success;
+	private volatile String reason;
+	private volatile DecidedBy decidedBy;
+	private volatile boolean remoteResponded;
+	private volatile boolean cancelSent;
+	private volatile SipMessage lastSentInvite;
+	private volatile SipTarget target;
+
+	// Written by the dialing thread (first INVITE) and the provider's receive
+	// thread only, read once the outcome is complete.
+	private volatile int statusCode;
+	private volatile long inviteSentAt = NOT_REACHED;
+	private volatile long firstProvisionalAt = NOT_REACHED;
+	private volatile long ringingAt = NOT_REACHED;
+	private volatile long finalResponseAt = NOT_REACHED;
+	private volatile int retryAfterSeconds;
+
+	/**
+	 * @param username the account the call is placed with
+	 * @param password         its password, needed to answer digest challenges on
+	 *                         behalf of the call
+	 * @param successCriterion when the call counts as successful
+	 */
+	CallState(String username, String password, SuccessCriterion successCriterion) {
+		this.username = username;
+		this.password = password;
+		this.successCriterion = successCriterion;
+	}
+
+	/**
+	 * @param target the server the call is placed on, {@code null} for the
+	 *               endpoint's outbound proxy
+	 */
+	void routeTo(SipTarget target) {
+		this.target = target;
+	}
+
+	SipTarget target() {
+		return target;
+	}
+
+	void inviteSent(SipMessage invite, InviteKey key) {
+		if (inviteSentAt == NOT_REACHED) {
+			inviteSentAt = System.nanoTime();
+		}
+		lastSentInvite = invite;
+		if (key != null) {
+			inviteKeys.add(key);
+		}
+	}
+
+	/**
+	 * Records the timing of a response to one of this call's INVITEs. Called for
+	 * every such response before mjSIP's transaction/dialog listeners see it. A
+	 * provisional response meeting the {@link SuccessCriterion} decides the call,
+	 * which is then cancelled since the remote has not responded finally.
+	 */
+	void responseObserved(SipMessage response) {
+		long now = System.nanoTime();
+		int code = response.getStatusLine().getCode();
+		if (code < 200) {
+			if (firstProvisionalAt == NOT_REACHED) {
+				firstProvisionalAt = now;
+			}
+			if ((code == 180 || code == 183) && ringingAt == NOT_REACHED) {
+				ringingAt = now;
+			}
+			if (successCriterion.isMetBy(response) && statusCode == 0 && !outcome.isDone()) {
+				EventLog.info(() -> "CALL: " + code + " meets success criterion "
+						+ successCriterion.optionValue());
+				statusCode = code;
+				decide(true, code + " " + response.getStatusLine().getReason(), DecidedBy.SUCCESS_CRITERION);
+			}
+		} else if (code != 401 && code != 407 && finalResponseAt == NOT_REACHED
+				// the 487 answering the CANCEL sent after meeting the success
+				// criterion must not replace the provisional status code
+				&& decidedBy != DecidedBy.SUCCESS_CRITERION) {
+			finalResponseAt = now;
+			statusCode = code;
+			if (code == 503) {
+				retryAfterSeconds = retryAfterSeconds(response);
+			}
+		}
+	}
+
+	/**
+	 * @return the seconds of {@code response}'s {@code Retry-After} header, e.g.
+	 *         {@code 120 (overloaded);duration=60}, {@code 0} if there is none
+	 */
+	static int retryAfterSeconds(SipMessage response) {
+		Header header = response.getHeader("Retry-After");
+		if (header == null) {
+			return 0;
+		}
+		String value = header.getValue().strip();
+		int end = 0;
+		while (end < value.length() && end < 9 && Character.isDigit(value.charAt(end))) {
+			end++;
+		}
+		return end == 0 ? 0 : Integer.parseInt(value.substring(0, end));
+	}
+
+	/**
+	 * Fallback for final responses that mjSIP's transaction/dialog listeners do not
+	 * report, see {@link CallService#call()}. {@link SipEndpoint} only hands over
+	 * responses whose {@link InviteKey} matches an INVITE this call actually sent,
+	 * and only after mjSIP's own listeners have processed them.
+	 */
+	void finalResponseReceived(SipMessage msg) {
+		int code = msg.getStatusLine().getCode();
+		// 401/407 are auth challenges handled by ExtendedInviteDialog
+		// (which re-sends the INVITE with Authorization), so we must NOT
+		// treat them as final — doing so would exit before the re-INVITE.
+		if (!remoteResponded && code != 401 && code != 407) {
+			EventLog.info(() -> "CALL: fallback detected final response " + code);
+			remoteResponded = true;
+			if (code >= 200 && code < 300) {
+				decide(true, "OK", DecidedBy.FALLBACK);
+			} else {
+				decide(false, code + " " + msg.getStatusLine().getReason(), DecidedBy.FALLBACK);
+			}
+		}
+	}
+
+	void remoteResponded(boolean success, String reason) {
+		remoteResponded = true;
+		decide(success, reason, DecidedBy.DIALOG_LISTENER);
+	}
+
+	void remoteEnded() {
+		remoteResponded = true;
+		decide(false, null, DecidedBy.DIALOG_LISTENER);
+	}
+
+	void timedOut(String reason) {
+		if (statusCode == 0) {
+			statusCode = 408;
+		}
+		decide(false, reason, DecidedBy.DIALOG_LISTENER);
+	}
+
+	void circuitOpen(String reason) {
+		decide(false, reason, DecidedBy.CIRCUIT_OPEN);
+	}
+
+	void cancelSent() {
+		cancelSent = true;
+	}
+
+	/**
+	 * @return {@code true} for exactly one caller, the one that has to tear the
+	 *         call down
+	 */
+	boolean markTerminated() {
+		return terminated.compareAndSet(false, true);
+	}
+
+	/**
+	 * Completes the outcome in case no SIP callback has decided it yet, in which
+	 * case the call failed.
+	 */
+	void release() {
+		decide(false, null, DecidedBy.TIMEOUT);
+	}
+
+	/**
+	 * The first decision wins, later callbacks (e.g. {@code onCallClosed} after
+	 * {@code onCallAccepted}) neither change the outcome nor the reason.
+	 */
+	private synchronized void decide(boolean success, String reason, DecidedBy decidedBy) {
+		if (!outcome.isDone()) {
+			this.success = success;
+			this.reason = reason;
+			this.decidedBy = decidedBy;
+			outcome.complete(success);
+		}
+	}
+
+	CompletableFuture<Boolean> outcome() {
+		return outcome;
+	}
+
+	/**
+	 * @return a snapshot of this call, to be taken once the call has been torn
+	 *         down
+	 */
+	CallResult toResult() {
+		DecidedBy by = decidedBy;
+		return new CallResult(success, statusCode, reason, by == null ? DecidedBy.TIMEOUT : by, cancelSent, startedAt,
+				inviteSentAt, firstProvisionalAt, ringingAt, finalResponseAt, System.nanoTime(), retryAfterSeconds);
+	}
+
+	String username() {
+		return username;
+	}
+
+	String password() {
+		return password;
+	}
+
+	boolean hasRemoteResponded() {
+		return remoteResponded;
+	}
+
+	String reason() {
+		return reason;
+	}
+
+	SipMessage lastSentInvite() {
+		return lastSentInvite;
+	}
+
+	/**
+	 * @return the keys of all INVITEs sent for this call, used to evict them from
+	 *         the endpoint's index once the call is over
+	 */
+	Set<InviteKey> inviteKeys() {
+		return inviteKeys;
+	}
+
+	void registeredAs(String callId) {
+		callIds.add(callId);
+	}
+
+	/**
+	 * @return the Call-IDs the endpoint looks this call up by, see
+	 *         {@link #inviteKeys()}
+	 */
+	Set<String> callIds() {
+		return callIds;
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * One circuit breaker per destination number and per SIP server a
+ * {@link SipEndpoint} calls. After {@link #FAILURE_THRESHOLD} failures in a row
+ * a breaker opens and calls to it fail fast for {@link #OPEN_FOR}. Then one
+ * trial call is let through: if it succeeds the breaker closes, otherwise it
+ * stays open for another period. A trial call that never reports lets the next
+ * one through after that period as well.
+ * <p>
+ * Only breakers that have seen a failure are kept, a success removes them, so
+ * calling millions of numbers does not fill the map.
+ */
+final class CircuitBreakers {
+
+	static final int FAILURE_THRESHOLD = 5;
+	static final Duration OPEN_FOR = Duration.ofSeconds(30);
+
+	private static final class Breaker {
+		int failures;
+		boolean open;
+		long openUntil;
+		boolean trialRunning;
+	}
+
+	private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+	private final LongSupplier nanoTime;
+
+	CircuitBreakers() {
+		this(System::nanoTime);
+	}
+
+	CircuitBreakers(LongSupplier nanoTime) {
+		this.nanoTime = nanoTime;
+	}
+
+	static String destination(String number) {
+		return "destination " + number;
+	}
+
+	static String server(SipTarget target) {
+		return "server " + target;
+	}
+
+	/**
+	 * @return whether a call to {@code key} may be placed. If the breaker is open
+	 *         but its period is over, this lets one trial call through and
+	 *         starts another period.
+	 */
+	boolean allows(String key) {
+		Breaker breaker = breakers.get(key);
+		if (breaker == null) {
+			return true;
+		}
+		synchronized (breaker) {
+			if (!breaker.open) {
+				return true;
+			}
+			long now = nanoTime.getAsLong();
+			if (now - breaker.openUntil < 0) {
+				return false;
+			}
+			breaker.trialRunning = true;
+			breaker.openUntil = now + OPEN_FOR.toNanos();
+			return true;
+		}
+	}
+
+	void succeeded(String key) {
+		Breaker breaker = breakers.remove(key);
+		if (breaker != null) {
+			synchronized (breaker) {
+				if (breaker.open) {
+					EventLog.info(() -> "BREAKER: " + key + " closed again");
+				}
+			}
+		}
+	}
+
+	void failed(String key) {
+		Breaker breaker = breakers.computeIfAbsent(key, k -> new Breaker());
+		synchronized (breaker) {
+			breaker.failures++;
+			// a call that was placed before the breaker opened does not reopen it
+			if (breaker.open ? breaker.trialRunning : breaker.failures >= FAILURE_THRESHOLD) {
+				breaker.open = true;
+				breaker.trialRunning = false;
+				breaker.openUntil = nanoTime.getAsLong() + OPEN_FOR.toNanos();
+				int failures = breaker.failures;
+				EventLog.warn(() -> "BREAKER: " + key + " open after " + failures + " failures, failing fast for "
+						+ OPEN_FOR.toSeconds() + " s");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+package com.github.pfichtner.jsipdialer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.header.SipHeaders;
+import org.mjsip.sip.message.SipMessage;
+
+/**
+ * Remembers the last digest challenge per account and server so that the next
+ * INVITE can carry an {@code Authorization} header right away. Servers like the FRITZ!Box
+ * challenge every INVITE, without the cache each call takes two INVITE round
+ * trips before the callee rings.
+ * <p>
+ * Only HA1 is kept, never the password. If the cached nonce has become stale,
+ * the server answers the preemptive INVITE with a fresh 401/407, which replaces
+ * the cache entry, and mjSIP answers the challenge as it always did. Servers of
+ * a pool may use different realms and nonces, so each one's challenge is kept
+ * apart.
+ */
+final class DigestAuthCache {
+
+	private static final HexFormat HEX = HexFormat.of();
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private record Entry(boolean proxy, String realm, String nonce, String opaque, boolean qopAuth, String ha1,
+			AtomicInteger nonceCount) {
+	}
+
+	private record Key(String username, SipTarget server) {
+	}
+
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Caches the challenge of a 401/407 response to an INVITE sent for
+	 * {@code username} to {@code server}. Challenges using anything but MD5 are
+	 * not cached.
+	 */
+	void challenged(String username, SipTarget server, String password, SipMessage response) {
+		int code = response.getStatusLine().getCode();
+		boolean proxy = code == 407;
+		Header header = response.getHeader(proxy ? SipHeaders.Proxy_Authenticate : SipHeaders.WWW_Authenticate);
+		if (header == null) {
+			return;
+		}
+		Map<String, String> params = parse(header.getValue());
+		String realm = params.get("realm");
+		String nonce = params.get("nonce");
+		String algorithm = params.getOrDefault("algorithm", "MD5");
+		Key key = new Key(username, server);
+		if (realm == null || nonce == null || !algorithm.equalsIgnoreCase("MD5")) {
+			entries.remove(key);
+			return;
+		}
+		boolean qopAuth = params.containsKey("qop")
+				&& Arrays.stream(params.get("qop").split(",")).map(String::strip).anyMatch("auth"::equals);
+		entries.put(key, new Entry(proxy, realm, nonce, params.get("opaque"), qopAuth,
+				md5(username + ":" + realm + ":" + password), new AtomicInteger()));
+	}
+
+	/**
+	 * Adds a preemptive {@code Authorization} (or {@code Proxy-Authorization})
+	 * header to {@code invite} if a challenge for {@code username} by
+	 * {@code server} is cached. If mjSIP already authorized the request itself
+	 * (the re-INVITE answering a challenge), its nonce count is taken over
+	 * instead, so the next preemptive request does not reuse it.
+	 */
+	void authorize(String username, SipTarget server, SipMessage invite) {
+		Entry entry = entries.get(new Key(username, server));
+		if (entry == null) {
+			return;
+		}
+		String headerName = entry.proxy() ? SipHeaders.Proxy_Authorization : SipHeaders.Authorization;
+		Header present = invite.getHeader(headerName);
+		if (present != null) {
+			Map<String, String> params = parse(present.getValue());
+			if (entry.nonce().equals(params.get("nonce")) && params.containsKey("nc")) {
+				try {
+					int sent = Integer.parseInt(params.get("nc"), 16);
+					entry.nonceCount().accumulateAndGet(sent, Math::max);
+				} catch (NumberFormatException e) {
+					// not ours to validate, the server will reject it
+				}
+			}
+			return;
+		}
+		String uri = invite.getRequestLine().getAddress().toString();
+		String method = invite.getRequestLine().getMethod();
+		StringBuilder value = new StringBuilder("Digest username=\"").append(username).append('"') //
+				.append(", realm=\"").append(entry.realm()).append('"') //
+				.append(", nonce=\"").append(entry.nonce()).append('"') //
+				.append(", uri=\"").append(uri).append('"');
+		if (entry.qopAuth()) {
+			String nc = "%08x".formatted(entry.nonceCount().incrementAndGet());
+			String cnonce = cnonce();
+			value.append(", response=\"")
+					.append(response(entry.ha1(), method, uri, entry.nonce(), nc, cnonce, "auth")).append('"')
+					.append(", cnonce=\"").append(cnonce).append('"') //
+					.append(", qop=auth, nc=").append(nc);
+		} else {
+			value.append(", response=\"").append(response(entry.ha1(), method, uri, entry.nonce(), null, null, null))
+					.append('"');
+		}
+		value.append(", algorithm=MD5");
+		if (entry.opaque() != null) {
+			value.append(", opaque=\"").append(entry.opaque()).append('"');
+		}
+		invite.setHeader(new Header(headerName, value.toString()));
+	}
+
+	boolean isCached(String username, SipTarget server) {
+		return entries.containsKey(new Key(username, server));
+	}
+
+	/**
+	 * The request digest of RFC 2617 section 3.2.2.1, {@code qop} being either
+	 * {@code auth} or {@code null}.
+	 */
+	static String response(String ha1, String method, String uri, String nonce, String nc, String cnonce,
+			String qop) {
+		String ha2 = md5(method + ":" + uri);
+		return qop == null //
+				? md5(ha1 + ":" + nonce + ":" + ha2)
+				: md5(ha1 + ":" + nonce + ":" + nc + ":" + cnonce + ":" + qop + ":" + ha2);
+	}
+
+	private static String cnonce() {
+		byte[] bytes = new byte[8];
+		RANDOM.nextBytes(bytes);
+		return HEX.formatHex(bytes);
+	}
+
+	static String md5(String value) {
+		try {
+			return HEX.formatHex(MessageDigest.getInstance("MD5").digest(value.getBytes(UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Parses the comma separated {@code name=value} pairs following the
+	 * {@code Digest} scheme, values may be quoted and contain commas.
+	 */
+	static Map<String, String> parse(String headerValue) {
+		Map<String, String> params = new HashMap<>();
+		String value = headerValue.strip();
+		if (value.regionMatches(true, 0, "Digest", 0, 6)) {
+			value = value.substring(6);
+		}
+		int i = 0;
+		while (i < value.length()) {
+			int eq = value.indexOf('=', i);
+			if (eq < 0) {
+				break;
+			}
+			String name = value.substring(i, eq).strip().toLowerCase(Locale.ROOT);
+			int start = eq + 1;
+			while (start < value.length() && value.charAt(start) == ' ') {
+				start++;
+			}
+			String paramValue;
+			int next;
+			if (start < value.length() && value.charAt(start) == '"') {
+				int end = value.indexOf('"', start + 1);
+				end = end < 0 ? value.length() : end;
+				paramValue = value.substring(start + 1, end);
+				int comma = value.indexOf(',', end);
+				next = comma < 0 ? value.length() : comma + 1;
+			} else {
+				int comma = value.indexOf(',', start);
+				int end = comma < 0 ? value.length() : comma;
+				paramValue = value.substring(start, end).strip();
+				next = end + 1;
+			}
+			params.put(name, paramValue);
+			i = next;
+		}
+		return params;
+	}
+
+}
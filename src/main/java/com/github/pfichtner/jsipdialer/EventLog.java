@@ -0,0 +1,117 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Level-gated event log for the SIP receive path. Messages are only built if
+ * their level is enabled and are handed to a bounded queue that a daemon thread
+ * drains to stderr, so mjSIP's receive thread never blocks on console I/O. If
+ * the queue is full, messages are dropped and the number of dropped messages is
+ * reported with the next batch that gets written.
+ */
+final class EventLog {
+
+	enum Level {
+		DEBUG, INFO, WARN, OFF;
+
+		static Level parse(String value) {
+			return valueOf(value.toUpperCase(Locale.ROOT));
+		}
+	}
+
+	static final int CAPACITY = 8192;
+
+	private static final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+	private static final AtomicLong pending = new AtomicLong();
+	private static final AtomicLong dropped = new AtomicLong();
+	private static final AtomicBoolean writerStarted = new AtomicBoolean();
+
+	private static volatile Level threshold = Level.INFO;
+
+	private EventLog() {
+	}
+
+	static void setLevel(Level level) {
+		threshold = level;
+	}
+
+	static boolean isEnabled(Level level) {
+		Level current = threshold;
+		return current != Level.OFF && level.compareTo(current) >= 0;
+	}
+
+	static void debug(Supplier<String> message) {
+		log(Level.DEBUG, message);
+	}
+
+	static void info(Supplier<String> message) {
+		log(Level.INFO, message);
+	}
+
+	static void warn(Supplier<String> message) {
+		log(Level.WARN, message);
+	}
+
+	private static void log(Level level, Supplier<String> message) {
+		if (!isEnabled(level)) {
+			return;
+		}
+		startWriter();
+		pending.incrementAndGet();
+		if (!queue.offer(message.get())) {
+			pending.decrementAndGet();
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Waits until all queued messages have been written, at most for the given
+	 * time. To be called before the process exits.
+	 */
+	static void flush(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (pending.get() > 0 && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(1);
+		}
+	}
+
+	private static void startWriter() {
+		if (!writerStarted.get() && writerStarted.compareAndSet(false, true)) {
+			Thread writer = new Thread(EventLog::write, "jsipdialer-log");
+			writer.setDaemon(true);
+			writer.start();
+		}
+	}
+
+	private static void write() {
+		List<String> batch = new ArrayList<>();
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch);
+			// System.err is looked up per batch since it may have been replaced.
+			PrintStream err = System.err;
+			long lost = dropped.getAndSet(0);
+			if (lost > 0) {
+				err.println("LOG: dropped " + lost + " messages");
+			}
+			batch.forEach(err::println);
+			err.flush();
+			pending.addAndGet(-batch.size());
+			batch.clear();
+		}
+	}
+
+}
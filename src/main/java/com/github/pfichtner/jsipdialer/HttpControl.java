@@ -0,0 +1,281 @@
+package com.github.pfichtner.jsipdialer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Lets other programs place calls over HTTP instead of spawning a process per
+ * call. Only listens on the loopback interface, there is no authentication.
+ * Requests with an {@code Origin} header are refused, browsers send one with
+ * every POST, so no web page can place calls through a local browser.
+ *
+ * <pre>
+ * POST /calls        destinationNumber=...[&amp;callerName=...][&amp;timeout=...]
+ *                    as form in the body of at most {@value #MAX_REQUEST_BYTES}
+ *                    bytes, 202 with the call's id, 429 if the queue is full,
+ *                    503 with Retry-After while new calls are paused
+ * GET  /calls/{id}   the call's state and, once done, its result
+ * GET  /metrics      the {@link CallMetrics} in Prometheus text format
+ * </pre>
+ *
+ * Requests are queued and started by a {@link CallManager}. While the SIP
+ * server's {@code Retry-After} pauses new calls, requests are shed instead of
+ * queued. The results of the last {@value #RETAINED_RESULTS} finished calls are
+ * kept.
+ */
+final class HttpControl implements AutoCloseable {
+
+	static final int RETAINED_RESULTS = 1000;
+	static final int MAX_REQUEST_BYTES = 8192;
+
+	private enum State {
+		QUEUED, RINGING, DONE
+	}
+
+	private static final class Job {
+		final String id;
+		final String destinationNumber;
+		volatile State state = State.QUEUED;
+		volatile CallResult result;
+		volatile String error;
+
+		Job(String id, String destinationNumber) {
+			this.id = id;
+			this.destinationNumber = destinationNumber;
+		}
+	}
+
+	private final CallManager callManager;
+	private final String defaultCallerName;
+	private final int defaultTimeout;
+	private final HttpServer server;
+	private final AtomicLong ids = new AtomicLong();
+	private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+	private final Queue<String> finished = new ConcurrentLinkedQueue<>();
+
+	HttpControl(int port, int queueCapacity, int concurrency, String defaultCallerName, int defaultTimeout,
+			CallManager.CallFactory callFactory) throws IOException {
+		this(port, defaultCallerName, defaultTimeout,
+				new CallManager(callFactory, new AccountThrottle(concurrency, 0, 1), queueCapacity));
+	}
+
+	/**
+	 * @param callManager places the calls, it is not closed by {@link #close()}
+	 */
+	HttpControl(int port, String defaultCallerName, int defaultTimeout, CallManager callManager)
+			throws IOException {
+		this.callManager = callManager;
+		this.defaultCallerName = defaultCallerName;
+		this.defaultTimeout = defaultTimeout;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.server.createContext("/calls", this::handle);
+		this.server.createContext("/metrics", HttpControl::metrics);
+		this.server.start();
+	}
+
+	int port() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (exchange.getRequestHeaders().containsKey("Origin")) {
+				send(exchange, 403, "{\"error\":\"cross-origin requests are not allowed\"}");
+				return;
+			}
+			String path = exchange.getRequestURI().getPath();
+			String method = exchange.getRequestMethod();
+			if (path.equals("/calls") && method.equals("POST")) {
+				submit(exchange);
+			} else if (path.startsWith("/calls/") && method.equals("GET")) {
+				Job job = jobs.get(path.substring("/calls/".length()));
+				if (job == null) {
+					send(exchange, 404, "{\"error\":\"unknown call\"}");
+				} else {
+					send(exchange, 200, toJson(job));
+				}
+			} else {
+				send(exchange, 405, "{\"error\":\"use POST /calls or GET /calls/{id}\"}");
+			}
+		}
+	}
+
+	private static void metrics(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (exchange.getRequestHeaders().containsKey("Origin")) {
+				send(exchange, 403, "{\"error\":\"cross-origin requests are not allowed\"}");
+				return;
+			}
+			if (!exchange.getRequestMethod().equals("GET")) {
+				send(exchange, 405, "{\"error\":\"use GET /metrics\"}");
+				return;
+			}
+			byte[] body = CallMetrics.global().toPrometheus().getBytes(UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CallMetrics.CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	private void submit(HttpExchange exchange) throws IOException {
+		byte[] form;
+		try (InputStream body = exchange.getRequestBody()) {
+			form = body.readNBytes(MAX_REQUEST_BYTES + 1);
+		}
+		if (form.length > MAX_REQUEST_BYTES) {
+			send(exchange, 413, "{\"error\":\"request too large\"}");
+			return;
+		}
+		Map<String, String> params;
+		try {
+			params = parseForm(new String(form, UTF_8));
+		} catch (IllegalArgumentException e) {
+			// a malformed %-escape
+			send(exchange, 400, "{\"error\":\"invalid call request\"}");
+			return;
+		}
+		String destinationNumber = params.get(SipClientMain.DESTINATION_NUMBER);
+		String callerName = params.getOrDefault(SipClientMain.CALLER_NAME, defaultCallerName);
+		int timeout;
+		try {
+			timeout = Integer.parseInt(params.getOrDefault(SipClientMain.TIMEOUT, String.valueOf(defaultTimeout)));
+		} catch (NumberFormatException e) {
+			send(exchange, 400, "{\"error\":\"timeout is not a valid integer\"}");
+			return;
+		}
+		if (destinationNumber == null || destinationNumber.isBlank() || hasControlCharacters(destinationNumber)
+				|| hasControlCharacters(callerName) || timeout < 0) {
+			send(exchange, 400, "{\"error\":\"invalid call request\"}");
+			return;
+		}
+
+		Duration paused = callManager.paused();
+		if (!paused.isZero()) {
+			exchange.getResponseHeaders().set("Retry-After", String.valueOf(Math.max(1, paused.toSeconds())));
+			send(exchange, 503, "{\"error\":\"the sip server asked to retry later\"}");
+			return;
+		}
+
+		Job job = new Job(String.valueOf(ids.incrementAndGet()), destinationNumber);
+		jobs.put(job.id, job);
+		try {
+			callManager.trySubmit(destinationNumber, callerName, timeout, () -> job.state = State.RINGING)
+					.whenComplete((result, e) -> finish(job, result, e));
+		} catch (RejectedExecutionException e) {
+			jobs.remove(job.id);
+			send(exchange, 429, "{\"error\":\"too many queued calls\"}");
+			return;
+		}
+		exchange.getResponseHeaders().set("Location", "/calls/" + job.id);
+		send(exchange, 202, toJson(job));
+	}
+
+	private void finish(Job job, CallResult result, Throwable error) {
+		if (error != null) {
+			job.error = String.valueOf(error instanceof CompletionException && error.getCause() != null
+					? error.getCause()
+					: error);
+		}
+		job.result = result;
+		job.state = State.DONE;
+		finished.add(job.id);
+		while (finished.size() > RETAINED_RESULTS) {
+			String evicted = finished.poll();
+			if (evicted != null) {
+				jobs.remove(evicted);
+			}
+		}
+	}
+
+	private static String toJson(Job job) {
+		StringBuilder json = new StringBuilder("{\"id\":\"").append(job.id).append('"') //
+				.append(",\"destinationNumber\":\"").append(escape(job.destinationNumber)).append('"') //
+				.append(",\"state\":\"").append(job.state.name().toLowerCase()).append('"');
+		CallResult result = job.result;
+		if (result != null) {
+			json.append(",\"success\":").append(result.success()) //
+					.append(",\"statusCode\":").append(result.statusCode()) //
+					.append(",\"reason\":").append(result.reason() == null ? "null" : '"' + escape(result.reason()) + '"')
+					.append(",\"durationMillis\":").append(result.totalDuration().toMillis());
+		} else if (job.error != null) {
+			json.append(",\"success\":false,\"error\":\"").append(escape(job.error)).append('"');
+		}
+		return json.append('}').toString();
+	}
+
+	private static String escape(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (char c : value.toCharArray()) {
+			switch (c) {
+			case '"' -> escaped.append("\\\"");
+			case '\\' -> escaped.append("\\\\");
+			default -> {
+				if (c < 0x20) {
+					escaped.append("\\u%04x".formatted((int) c));
+				} else {
+					escaped.append(c);
+				}
+			}
+			}
+		}
+		return escaped.toString();
+	}
+
+	private static Map<String, String> parseForm(String form) {
+		Map<String, String> params = new HashMap<>();
+		if (form == null || form.isBlank()) {
+			return params;
+		}
+		for (String pair : form.strip().split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) {
+				params.put(URLDecoder.decode(pair.substring(0, eq), UTF_8),
+						URLDecoder.decode(pair.substring(eq + 1), UTF_8));
+			}
+		}
+		return params;
+	}
+
+	private static boolean hasControlCharacters(String value) {
+		return value != null && value.chars().anyMatch(c -> c < 0x20 || c == 0x7F);
+	}
+
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Stops accepting requests. Calls already queued or ringing are not waited
+	 * for.
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+}
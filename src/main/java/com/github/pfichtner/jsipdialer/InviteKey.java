@@ -0,0 +1,29 @@
+package com.github.pfichtner.jsipdialer;
+
+import org.mjsip.sip.header.CallIdHeader;
+import org.mjsip.sip.header.FromHeader;
+import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.message.SipMessage;
+
+/**
+ * Identifies one INVITE client transaction by the values a genuine response has
+ * to echo back: the top Via branch, the Call-ID and the From tag. Only these
+ * strings are kept in {@link SipEndpoint}'s index, not the whole message.
+ */
+record InviteKey(String branch, String callId, String fromTag) {
+
+	/**
+	 * @return the key of {@code msg} or {@code null} if any of the three values is
+	 *         missing, such a message can never be matched
+	 */
+	static InviteKey of(SipMessage msg) {
+		ViaHeader via = msg.getViaHeader();
+		CallIdHeader callId = msg.getCallIdHeader();
+		FromHeader from = msg.getFromHeader();
+		if (via == null || via.getBranch() == null || callId == null || from == null || from.getTag() == null) {
+			return null;
+		}
+		return new InviteKey(via.getBranch(), callId.getCallId(), from.getTag());
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.github.pfichtner.jsipdialer;
+
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.provider.ConnectionId;
+import org.mjsip.sip.provider.SipProvider;
+
+/**
+ * Keeps the TCP connection to the outbound proxy open between the calls of a
+ * long-running {@link SipEndpoint}. mjSIP closes idle connections and proxies
+ * and NATs drop them, after which the next INVITE has to wait for a new
+ * handshake.
+ * <p>
+ * mjSIP only writes whole SIP messages to its connections, so instead of the
+ * bare CRLF keep-alive of RFC 5626 an {@link OptionsRequest} is sent to the
+ * proxy. The first one is sent right away, so the connection is established
+ * before the first call. If it breaks, mjSIP drops it and opens a new one with
+ * the next message sent, keep-alive or INVITE.
+ */
+final class KeepAlive {
+
+	private final SipProvider sipProvider;
+	private final SipURI proxy;
+	private final String transport;
+	private final String viaHost;
+	private final int localPort;
+	private final long intervalMillis;
+
+	private volatile boolean stopped;
+
+	KeepAlive(SipProvider sipProvider, SipURI proxy, String transport, String viaAddress, int localPort,
+			long intervalMillis) {
+		this.sipProvider = sipProvider;
+		this.proxy = proxy;
+		this.transport = transport;
+		this.viaHost = OptionsRequest.viaHost(viaAddress);
+		this.localPort = localPort;
+		this.intervalMillis = intervalMillis;
+	}
+
+	void start() {
+		schedule(0);
+	}
+
+	void stop() {
+		stopped = true;
+	}
+
+	private void schedule(long delayMillis) {
+		sipProvider.scheduler().schedule(delayMillis, this::ping);
+	}
+
+	private void ping() {
+		if (stopped) {
+			return;
+		}
+		try {
+			ConnectionId connection = sipProvider
+					.sendMessage(OptionsRequest.create(proxy, transport, viaHost, localPort));
+			if (connection == null) {
+				EventLog.warn(() -> "KEEPALIVE: could not reach " + proxy + ", retrying in " + intervalMillis + " ms");
+			}
+		} catch (RuntimeException e) {
+			EventLog.warn(() -> "KEEPALIVE: sending to " + proxy + " failed: " + e.getMessage());
+		}
+		schedule(intervalMillis);
+	}
+
+}
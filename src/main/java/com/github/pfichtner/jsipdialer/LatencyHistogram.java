@@ -0,0 +1,70 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in buckets whose bounds grow exponentially, four per
+ * doubling from 1 ms to about 65 s, so the relative error stays below 19%
+ * whether a call rang for milliseconds or a minute (like an HDR histogram with
+ * one significant digit). Recording is lock-free and never allocates.
+ */
+final class LatencyHistogram {
+
+	private static final int BUCKETS_PER_DOUBLING = 4;
+	private static final int DOUBLINGS = 16;
+	private static final long[] UPPER_BOUNDS_MICROS = new long[BUCKETS_PER_DOUBLING * DOUBLINGS + 1];
+
+	static {
+		for (int i = 0; i < UPPER_BOUNDS_MICROS.length; i++) {
+			UPPER_BOUNDS_MICROS[i] = Math.round(1000 * Math.pow(2, (double) i / BUCKETS_PER_DOUBLING));
+		}
+	}
+
+	// the last slot counts the values above the highest bound
+	private final AtomicLongArray counts = new AtomicLongArray(UPPER_BOUNDS_MICROS.length + 1);
+	private final LongAdder sumMicros = new LongAdder();
+
+	void record(Duration duration) {
+		long micros = Math.max(0, duration.toNanos() / 1000);
+		int index = Arrays.binarySearch(UPPER_BOUNDS_MICROS, micros);
+		counts.incrementAndGet(index >= 0 ? index : -index - 1);
+		sumMicros.add(micros);
+	}
+
+	long count() {
+		long count = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Appends this histogram in Prometheus text format: cumulative
+	 * {@code _bucket} lines with the upper bound in seconds, {@code _sum} and
+	 * {@code _count}.
+	 */
+	void writePrometheus(Appendable out, String name, String help) throws IOException {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" histogram\n");
+		long cumulative = 0;
+		for (int i = 0; i < UPPER_BOUNDS_MICROS.length; i++) {
+			cumulative += counts.get(i);
+			out.append(name).append("_bucket{le=\"").append(seconds(UPPER_BOUNDS_MICROS[i])).append("\"} ")
+					.append(String.valueOf(cumulative)).append('\n');
+		}
+		cumulative += counts.get(UPPER_BOUNDS_MICROS.length);
+		out.append(name).append("_bucket{le=\"+Inf\"} ").append(String.valueOf(cumulative)).append('\n');
+		out.append(name).append("_sum ").append(seconds(sumMicros.sum())).append('\n');
+		out.append(name).append("_count ").append(String.valueOf(cumulative)).append('\n');
+	}
+
+	private static String seconds(long micros) {
+		return String.valueOf(micros / 1_000_000.0);
+	}
+
+}
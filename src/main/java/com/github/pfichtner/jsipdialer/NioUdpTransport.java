@@ -0,0 +1,254 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.ConnectionId;
+import org.mjsip.sip.provider.SipTransport;
+import org.mjsip.sip.provider.SipTransportListener;
+import org.zoolu.net.IpAddress;
+
+/**
+ * A UDP {@link SipTransport} built on one non-blocking {@link DatagramChannel}
+ * and a single selector thread, replacing mjSIP's blocking socket and its
+ * receive thread. Datagrams are received into a direct buffer owned by the
+ * selector thread, checked by a {@link Filter} and only then parsed and handed
+ * to mjSIP's SipProvider on that thread, as mjSIP's transport does. Messages are sent right away from the calling
+ * thread through a direct buffer taken from a small pool; only if the socket's
+ * send buffer is full they are queued and written by the selector thread once
+ * the channel is writable again.
+ */
+final class NioUdpTransport implements SipTransport {
+
+	static final String PROTOCOL = "udp";
+
+	private static final int MAX_DATAGRAM = 65_535;
+	private static final int POOLED_BUFFERS = 32;
+	private static final long BIND_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Decides on the raw bytes of a datagram whether it is parsed at all.
+	 */
+	@FunctionalInterface
+	interface Filter {
+		boolean accepts(byte[] datagram, int offset, int length);
+	}
+
+	private record Outgoing(ByteBuffer buffer, SocketAddress target) {
+	}
+
+	private final DatagramChannel channel;
+	private final int localPort;
+	private final Filter filter;
+	private final Selector selector;
+	private final SelectionKey key;
+	private final Thread loop;
+	private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+	private final byte[] receiveBytes = new byte[MAX_DATAGRAM];
+	private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+	private final Queue<Outgoing> outgoing = new ConcurrentLinkedQueue<>();
+	private volatile SipTransportListener listener;
+	private volatile boolean running = true;
+
+	/**
+	 * @param localPort the port to bind to on all interfaces. If mjSIP's own
+	 *                  transport bound it before, it is retried for a second
+	 *                  while that socket is being closed.
+	 * @param filter    the datagrams to drop before they are parsed
+	 */
+	NioUdpTransport(int localPort, Filter filter) throws IOException {
+		this.filter = filter;
+		this.channel = bind(localPort);
+		this.localPort = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+		this.channel.configureBlocking(false);
+		this.selector = Selector.open();
+		this.key = channel.register(selector, SelectionKey.OP_READ);
+		this.loop = new Thread(this::run, "jsipdialer-nio-udp");
+		this.loop.setDaemon(true);
+		this.loop.start();
+	}
+
+	private static DatagramChannel bind(int localPort) throws IOException {
+		long deadline = System.nanoTime() + BIND_RETRY_NANOS;
+		while (true) {
+			DatagramChannel channel = DatagramChannel.open();
+			try {
+				return channel.bind(new InetSocketAddress(localPort));
+			} catch (BindException e) {
+				channel.close();
+				if (System.nanoTime() - deadline >= 0) {
+					throw e;
+				}
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
+	@Override
+	public String getProtocol() {
+		return PROTOCOL;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return localPort;
+	}
+
+	@Override
+	public void setListener(SipTransportListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public ConnectionId sendMessage(SipMessage msg, IpAddress destIpAddress, int destPort, int ttl)
+			throws IOException {
+		byte[] bytes = msg.getBytes();
+		ByteBuffer buffer = bytes.length <= MAX_DATAGRAM ? borrow() : ByteBuffer.allocate(bytes.length);
+		buffer.put(bytes).flip();
+		SocketAddress target = new InetSocketAddress(destIpAddress.getInetAddress(), destPort);
+		// queued datagrams go first, so messages are not reordered
+		if (outgoing.isEmpty() && channel.send(buffer, target) > 0) {
+			giveBack(buffer);
+		} else {
+			outgoing.add(new Outgoing(buffer, target));
+			key.interestOpsOr(SelectionKey.OP_WRITE);
+			selector.wakeup();
+		}
+		// UDP is connectionless, as with mjSIP's transport there is no connection
+		return null;
+	}
+
+	@Override
+	public void halt() {
+		running = false;
+		selector.wakeup();
+	}
+
+	@Override
+	public String toString() {
+		return "NIO " + PROTOCOL + ":" + getLocalPort();
+	}
+
+	private void run() {
+		Exception error = null;
+		try {
+			while (running) {
+				selector.select();
+				if (key.isValid() && key.isReadable()) {
+					receiveAll();
+				}
+				if (key.isValid() && key.isWritable()) {
+					flush();
+				}
+				selector.selectedKeys().clear();
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			error = e;
+		} finally {
+			close();
+		}
+		SipTransportListener listener = this.listener;
+		if (error != null && listener != null) {
+			listener.onTransportTerminated(this, error);
+		}
+	}
+
+	private void receiveAll() throws IOException {
+		while (true) {
+			receiveBuffer.clear();
+			SocketAddress source = channel.receive(receiveBuffer);
+			if (source == null) {
+				return;
+			}
+			receiveBuffer.flip();
+			int length = receiveBuffer.remaining();
+			receiveBuffer.get(receiveBytes, 0, length);
+			if (!isBlank(receiveBytes, length) && filter.accepts(receiveBytes, 0, length)) {
+				received(source, length);
+			}
+		}
+	}
+
+	private void received(SocketAddress source, int length) {
+		SipTransportListener listener = this.listener;
+		if (listener == null) {
+			return;
+		}
+		InetSocketAddress remote = (InetSocketAddress) source;
+		SipMessage msg = new SipMessage(receiveBytes, 0, length);
+		msg.setRemoteAddress(remote.getAddress().getHostAddress());
+		msg.setRemotePort(remote.getPort());
+		msg.setTransport(PROTOCOL);
+		try {
+			listener.onReceivedMessage(this, msg);
+		} catch (RuntimeException e) {
+			// one bad message must not stop the loop, mjSIP's transport ignores it too
+			EventLog.warn(() -> "NIO: handling a message from " + source + " failed: " + e);
+		}
+	}
+
+	private void flush() throws IOException {
+		for (Outgoing next = outgoing.peek(); next != null; next = outgoing.peek()) {
+			if (channel.send(next.buffer(), next.target()) == 0) {
+				return;
+			}
+			outgoing.poll();
+			giveBack(next.buffer());
+		}
+		key.interestOps(SelectionKey.OP_READ);
+		// a sender may have queued a datagram after the loop above saw none
+		if (!outgoing.isEmpty()) {
+			key.interestOpsOr(SelectionKey.OP_WRITE);
+		}
+	}
+
+	private ByteBuffer borrow() {
+		ByteBuffer buffer = pool.poll();
+		return buffer == null ? ByteBuffer.allocateDirect(MAX_DATAGRAM) : buffer;
+	}
+
+	private void giveBack(ByteBuffer buffer) {
+		if (buffer.isDirect() && pool.size() < POOLED_BUFFERS) {
+			buffer.clear();
+			pool.offer(buffer);
+		}
+	}
+
+	private void close() {
+		try {
+			selector.close();
+		} catch (IOException ignored) {
+		}
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	// mjSIP's keep-alives are bare CRLFs
+	private static boolean isBlank(byte[] bytes, int length) {
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] != '\r' && bytes[i] != '\n' && bytes[i] != ' ' && bytes[i] != '\t') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.header.CSeqHeader;
+import org.mjsip.sip.header.CallIdHeader;
+import org.mjsip.sip.header.FromHeader;
+import org.mjsip.sip.header.MaxForwardsHeader;
+import org.mjsip.sip.header.RequestLine;
+import org.mjsip.sip.header.ToHeader;
+import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+
+/**
+ * Builds the out-of-dialog OPTIONS requests sent to SIP servers outside of
+ * calls: the {@link KeepAlive}, the {@link ProxyPool}'s probes and the
+ * round-trip time measurement of {@link TimerT1#AUTO}. Every request is a
+ * transaction of its own with a new Call-ID, so its response can be told from
+ * the others by Call-ID and CSeq.
+ */
+final class OptionsRequest {
+
+	private static final HexFormat HEX = HexFormat.of();
+
+	private OptionsRequest() {
+	}
+
+	/**
+	 * @param viaHost   the host put into Via and From, see {@link #viaHost}
+	 * @param localPort the port the response is to be sent to
+	 */
+	static SipMessage create(SipURI target, String transport, String viaHost, int localPort) {
+		SipMessage options = new SipMessage();
+		options.setRequestLine(new RequestLine(SipMethods.OPTIONS, target));
+		ViaHeader via = new ViaHeader(transport.toUpperCase(), viaHost, false, localPort);
+		via.setBranch("z9hG4bK" + random());
+		options.addViaHeader(via);
+		options.setFromHeader(new FromHeader(new SipURI("jsipdialer", viaHost), random()));
+		options.setToHeader(new ToHeader(target));
+		options.setCallIdHeader(new CallIdHeader(random() + "@" + viaHost));
+		options.setCSeqHeader(new CSeqHeader(1, SipMethods.OPTIONS));
+		options.setMaxForwardsHeader(new MaxForwardsHeader(70));
+		options.setBody(null, null);
+		return options;
+	}
+
+	/**
+	 * @param viaAddress the configured via address, {@code null} if there is none
+	 * @return {@code viaAddress} or, without one, the local host's address
+	 */
+	static String viaHost(String viaAddress) {
+		return viaAddress == null || viaAddress.isBlank() ? localAddress() : viaAddress;
+	}
+
+	private static String random() {
+		byte[] bytes = new byte[8];
+		ThreadLocalRandom.current().nextBytes(bytes);
+		return HEX.formatHex(bytes);
+	}
+
+	private static String localAddress() {
+		try {
+			return InetAddress.getLocalHost().getHostAddress();
+		} catch (UnknownHostException e) {
+			return "127.0.0.1";
+		}
+	}
+
+}
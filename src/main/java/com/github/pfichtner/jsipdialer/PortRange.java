@@ -0,0 +1,121 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramSocket;
+import java.net.ServerSocket;
+
+/**
+ * The local port(s) jsipdialer may bind its SIP socket to: a single port, a
+ * range like {@code 20000-20100} of which the first free port is taken, or
+ * {@code 0} for any port the operating system assigns. The ports of a range
+ * are tried by binding the transport itself, so no other process can take a
+ * port between it being found free and being bound. mjSIP has to know its
+ * port before binding, so for {@code 0} a free port is found by opening and
+ * closing a socket first. Another process may take that port in between, the
+ * bind then fails with a {@link BindException} and the next free port is
+ * tried.
+ */
+public record PortRange(int from, int to) {
+
+	public static final PortRange EPHEMERAL = new PortRange(0, 0);
+
+	private static final int EPHEMERAL_ATTEMPTS = 10;
+
+	public PortRange {
+		if (from < 0 || to > 65535 || from > to) {
+			throw new IllegalArgumentException("Invalid port range %d-%d".formatted(from, to));
+		}
+		if (from == 0 && to != 0) {
+			throw new IllegalArgumentException("Port 0 cannot be part of a range");
+		}
+	}
+
+	public static PortRange of(int port) {
+		return new PortRange(port, port);
+	}
+
+	/**
+	 * @param value a port ({@code 15062}), a range ({@code 20000-20100}) or
+	 *              {@code 0}
+	 */
+	public static PortRange parse(String value) {
+		int dash = value.indexOf('-');
+		try {
+			return dash < 0 //
+					? of(Integer.parseInt(value.strip())) //
+					: new PortRange(Integer.parseInt(value.substring(0, dash).strip()),
+							Integer.parseInt(value.substring(dash + 1).strip()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("'%s' is neither a port nor a port range".formatted(value));
+		}
+	}
+
+	/**
+	 * Binds something to a port of a range, see {@link PortRange#bind}.
+	 */
+	@FunctionalInterface
+	public interface Binder<T> {
+		/**
+		 * @throws BindException if {@code port} is in use, the next one is tried
+		 */
+		T bind(int port) throws IOException;
+	}
+
+	/**
+	 * Binds {@code binder} to the first port of the range it succeeds with, so
+	 * whatever is bound holds the port from then on. A single port is tried once
+	 * and fails if it is in use. With {@code 0} up to
+	 * {@value #EPHEMERAL_ATTEMPTS} ports the operating system hands out are tried,
+	 * in case another process takes one between it being found free and
+	 * {@code binder} binding it.
+	 *
+	 * @param transport the protocol whose free ports are picked for {@code 0}
+	 * @throws BindException if no port of the range could be bound
+	 * @throws IOException   as thrown by {@code binder} for other reasons
+	 */
+	public <T> T bind(String transport, Binder<T> binder) throws IOException {
+		if (from == 0) {
+			for (int attempt = 1;; attempt++) {
+				try {
+					return binder.bind(freePort(transport));
+				} catch (BindException e) {
+					if (attempt == EPHEMERAL_ATTEMPTS) {
+						throw e;
+					}
+				}
+			}
+		}
+		for (int port = from;; port++) {
+			try {
+				return binder.bind(port);
+			} catch (BindException e) {
+				if (port == to) {
+					throw from == to ? e
+							: new BindException("No free %s port in range %d-%d".formatted(transport, from, to));
+				}
+			}
+		}
+	}
+
+	private static int freePort(String transport) throws BindException {
+		try {
+			if ("tcp".equalsIgnoreCase(transport)) {
+				try (ServerSocket socket = new ServerSocket(0)) {
+					return socket.getLocalPort();
+				}
+			}
+			try (DatagramSocket socket = new DatagramSocket(0)) {
+				return socket.getLocalPort();
+			}
+		} catch (IOException e) {
+			throw (BindException) new BindException("Could not find a free " + transport + " port").initCause(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return from == to ? String.valueOf(from) : from + "-" + to;
+	}
+
+}
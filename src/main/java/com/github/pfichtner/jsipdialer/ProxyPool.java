@@ -0,0 +1,200 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.SipProvider;
+
+/**
+ * Spreads the calls of a long-running {@link SipEndpoint} over the servers
+ * {@link SipServerResolver} returns. Every server is probed with an
+ * out-of-dialog OPTIONS at a fixed interval. A server that left
+ * {@link #DOWN_AFTER_UNANSWERED} probes in a row unanswered, or answered with
+ * {@code 503}, is considered down until it answers again. New calls are placed
+ * on the live server with the fewest calls in progress, ties go to the one that
+ * got the fewest calls so far. Servers that are down are only tried last, so a
+ * dead server does not cost a call its whole timeout.
+ */
+final class ProxyPool {
+
+	static final int DOWN_AFTER_UNANSWERED = 2;
+
+	/**
+	 * @param rtt the smoothed round-trip time of the probes, empty until the
+	 *            first one was answered
+	 */
+	record Health(SipTarget target, boolean alive, int outstanding, Optional<Duration> rtt) {
+	}
+
+	private record Probe(Server server, long sentAt) {
+	}
+
+	private static final class Server {
+
+		final SipTarget target;
+		final SipURI uri;
+		final AtomicInteger outstanding = new AtomicInteger();
+		final AtomicLong placed = new AtomicLong();
+		volatile boolean alive = true;
+		volatile long smoothedRttNanos = -1;
+		volatile InviteKey pendingProbe;
+		// counted up by the scheduler thread, reset by the receiving one
+		final AtomicInteger unanswered = new AtomicInteger();
+
+		Server(SipTarget target) {
+			this.target = target;
+			this.uri = new SipURI(target.host(), target.port());
+		}
+
+	}
+
+	private final SipProvider sipProvider;
+	private final Supplier<List<SipTarget>> targets;
+	private final String transport;
+	private final String viaHost;
+	private final int localPort;
+	private final long intervalMillis;
+	private final Map<SipTarget, Server> servers = new ConcurrentHashMap<>();
+	private final Map<InviteKey, Probe> probes = new ConcurrentHashMap<>();
+	private final Map<CallState, Server> calls = new ConcurrentHashMap<>();
+
+	private volatile boolean stopped;
+
+	ProxyPool(SipProvider sipProvider, Supplier<List<SipTarget>> targets, String transport, String viaAddress,
+			int localPort, long intervalMillis) {
+		this.sipProvider = sipProvider;
+		this.targets = targets;
+		this.transport = transport;
+		this.viaHost = OptionsRequest.viaHost(viaAddress);
+		this.localPort = localPort;
+		this.intervalMillis = intervalMillis;
+	}
+
+	void start() {
+		schedule(0);
+	}
+
+	void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * @return {@code targets} with the live servers first, ordered by the calls
+	 *         in progress on them
+	 */
+	List<SipTarget> order(List<SipTarget> targets) {
+		List<Server> candidates = new ArrayList<>(targets.size());
+		for (SipTarget target : targets) {
+			candidates.add(server(target));
+		}
+		// a stable sort, so the resolver's order decides the rest
+		candidates.sort(Comparator.<Server, Boolean>comparing(server -> !server.alive)
+				.thenComparingInt(server -> server.outstanding.get())
+				.thenComparingLong(server -> server.placed.get()));
+		return candidates.stream().map(server -> server.target).toList();
+	}
+
+	void callStarted(CallState state) {
+		SipTarget target = state.target();
+		if (target == null) {
+			return;
+		}
+		Server server = server(target);
+		if (calls.put(state, server) == null) {
+			server.outstanding.incrementAndGet();
+			server.placed.incrementAndGet();
+		}
+	}
+
+	void callEnded(CallState state) {
+		Server server = calls.remove(state);
+		if (server != null) {
+			server.outstanding.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return whether {@code response} answered one of the probes
+	 */
+	boolean responseReceived(SipMessage response) {
+		InviteKey key = InviteKey.of(response);
+		Probe probe = key == null ? null : probes.remove(key);
+		if (probe == null) {
+			return false;
+		}
+		Server server = probe.server();
+		long rtt = System.nanoTime() - probe.sentAt();
+		long smoothed = server.smoothedRttNanos;
+		server.smoothedRttNanos = smoothed < 0 ? rtt : (7 * smoothed + rtt) / 8;
+		if (response.getStatusLine().getCode() == 503) {
+			markDown(server, "it answered 503");
+		} else {
+			server.unanswered.set(0);
+			if (!server.alive) {
+				server.alive = true;
+				EventLog.info(() -> "POOL: " + server.target + " is up again");
+			}
+		}
+		return true;
+	}
+
+	List<Health> health() {
+		return servers.values().stream()
+				.map(server -> new Health(server.target, server.alive, server.outstanding.get(),
+						server.smoothedRttNanos < 0 ? Optional.empty()
+								: Optional.of(Duration.ofNanos(server.smoothedRttNanos))))
+				.toList();
+	}
+
+	private void schedule(long delayMillis) {
+		sipProvider.scheduler().schedule(delayMillis, this::probe);
+	}
+
+	private void probe() {
+		if (stopped) {
+			return;
+		}
+		for (SipTarget target : targets.get()) {
+			Server server = server(target);
+			InviteKey previous = server.pendingProbe;
+			if (previous != null && probes.remove(previous) != null) {
+				int unanswered = server.unanswered.incrementAndGet();
+				if (unanswered >= DOWN_AFTER_UNANSWERED) {
+					markDown(server, unanswered + " probes were not answered");
+				}
+			}
+			SipMessage options = OptionsRequest.create(server.uri, transport, viaHost, localPort);
+			InviteKey key = InviteKey.of(options);
+			server.pendingProbe = key;
+			probes.put(key, new Probe(server, System.nanoTime()));
+			try {
+				sipProvider.sendMessage(options, transport, target.host(), target.port(), 0);
+			} catch (RuntimeException e) {
+				EventLog.debug(() -> "POOL: probing " + target + " failed: " + e.getMessage());
+			}
+		}
+		schedule(intervalMillis);
+	}
+
+	private void markDown(Server server, String why) {
+		if (server.alive) {
+			server.alive = false;
+			EventLog.warn(() -> "POOL: " + server.target + " is down, " + why);
+		}
+	}
+
+	private Server server(SipTarget target) {
+		return servers.computeIfAbsent(target, Server::new);
+	}
+
+}
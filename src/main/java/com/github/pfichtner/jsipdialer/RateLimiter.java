@@ -0,0 +1,63 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket: at most {@code permitsPerSecond} calls per second, of which
+ * up to {@code burst} may start at once. A caller that comes too early is put
+ * to sleep until its slot. Slots not used are saved up to {@code burst}, so
+ * with the default burst of 1 calls are spaced evenly and an idle limiter does
+ * not allow a burst afterwards.
+ */
+final class RateLimiter {
+
+	private final long intervalNanos;
+	private final long burstNanos;
+	// the theoretical arrival time of the next permit, permits are handed out
+	// while it is at most burstNanos ahead of now
+	private long nextSlot = System.nanoTime();
+
+	RateLimiter(double permitsPerSecond) {
+		this(permitsPerSecond, 1);
+	}
+
+	RateLimiter(double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("permitsPerSecond must be positive but was " + permitsPerSecond);
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("burst must be at least 1 but was " + burst);
+		}
+		this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+		this.burstNanos = (burst - 1) * intervalNanos;
+	}
+
+	void acquire() throws InterruptedException {
+		long waitNanos;
+		synchronized (this) {
+			long now = System.nanoTime();
+			waitNanos = Math.max(0, nextSlot - burstNanos - now);
+			nextSlot = Math.max(nextSlot, now) + intervalNanos;
+		}
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Takes a permit only if one is available right now.
+	 *
+	 * @return {@code 0} if a permit was taken, otherwise the nanoseconds until
+	 *         the next one is available
+	 */
+	synchronized long tryAcquire() {
+		long now = System.nanoTime();
+		long waitNanos = nextSlot - burstNanos - now;
+		if (waitNanos > 0) {
+			return waitNanos;
+		}
+		nextSlot = Math.max(nextSlot, now) + intervalNanos;
+		return 0;
+	}
+
+}
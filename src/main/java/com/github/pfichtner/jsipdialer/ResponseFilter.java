@@ -0,0 +1,250 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Drops responses to requests a {@link SipEndpoint} never sent before mjSIP or
+ * any listener looks at them. With the {@link NioUdpTransport} only the raw
+ * bytes of a datagram are scanned for its top Via branch and its Call-ID
+ * before any message is built, so a flood of spoofed datagrams costs little
+ * more than receiving them. Messages received by mjSIP's own transports are
+ * checked by their already parsed headers.
+ * <p>
+ * Every request sent is expected to be answered with its branch and Call-ID
+ * until its transaction is over: a non-INVITE one for 64*T1 (Timer F), an
+ * INVITE until the call is released and then for another 64*T1, so late
+ * retransmissions of its final response still reach mjSIP to be acknowledged.
+ * Requests received are always let through.
+ */
+final class ResponseFilter {
+
+	/** Keep expecting responses until {@link #expire(String, long)} is called. */
+	static final long UNTIL_EXPIRED = Long.MAX_VALUE;
+
+	private static final long PURGE_EVERY = TimeUnit.SECONDS.toNanos(1);
+
+	enum Verdict {
+		/** A request or a response to a request sent. */
+		ACCEPTED,
+		/** A response to no request sent, or with another Call-ID. */
+		UNMATCHED,
+		/** A response without a top Via branch or a Call-ID. */
+		MALFORMED
+	}
+
+	private static final class Transaction {
+		final String callId;
+		volatile long expiresAt;
+
+		Transaction(String callId, long expiresAt) {
+			this.callId = callId;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final Map<String, Transaction> outstanding = new ConcurrentHashMap<>();
+	private final LongSupplier nanoTime;
+	private final AtomicLong nextPurge;
+
+	ResponseFilter() {
+		this(System::nanoTime);
+	}
+
+	ResponseFilter(LongSupplier nanoTime) {
+		this.nanoTime = nanoTime;
+		this.nextPurge = new AtomicLong(nanoTime.getAsLong() + PURGE_EVERY);
+	}
+
+	/**
+	 * Lets responses with {@code branch} and {@code callId} through for
+	 * {@code lifetimeNanos} or, with {@link #UNTIL_EXPIRED}, until
+	 * {@link #expire(String, long)}. A retransmission or a CANCEL, whose branch
+	 * is that of its INVITE, does not change an expected transaction.
+	 */
+	void expect(String branch, String callId, long lifetimeNanos) {
+		long now = nanoTime.getAsLong();
+		outstanding.putIfAbsent(branch,
+				new Transaction(callId, lifetimeNanos == UNTIL_EXPIRED ? UNTIL_EXPIRED : now + lifetimeNanos));
+		purge(now);
+	}
+
+	/**
+	 * Lets responses with {@code branch} through for another
+	 * {@code lingerNanos} only.
+	 */
+	void expire(String branch, long lingerNanos) {
+		Transaction transaction = outstanding.get(branch);
+		if (transaction != null) {
+			transaction.expiresAt = nanoTime.getAsLong() + lingerNanos;
+		}
+	}
+
+	int outstanding() {
+		return outstanding.size();
+	}
+
+	/**
+	 * Checks a received datagram before mjSIP builds a message from it.
+	 */
+	Verdict check(byte[] message, int offset, int length) {
+		int limit = offset + length;
+		if (!startsWith(message, offset, limit, "SIP/")) {
+			return Verdict.ACCEPTED;
+		}
+		String branch = null;
+		String callId = null;
+		boolean viaSeen = false;
+		int start = lineEnd(message, offset, limit) + 1;
+		while (start < limit && !(viaSeen && callId != null)) {
+			int end = lineEnd(message, start, limit);
+			if (end == start || end == start + 1 && message[start] == '\r') {
+				// the empty line ending the headers
+				break;
+			}
+			// folded headers continue on lines starting with white space
+			while (end + 1 < limit && isBlank(message[end + 1])) {
+				end = lineEnd(message, end + 1, limit);
+			}
+			int colon = indexOf(message, ':', start, end);
+			if (colon > start) {
+				if (!viaSeen && isHeader(message, start, colon, "Via", "v")) {
+					viaSeen = true;
+					branch = branch(message, colon + 1, end);
+				} else if (callId == null && isHeader(message, start, colon, "Call-ID", "i")) {
+					callId = token(message, skipBlanks(message, colon + 1, end), end);
+				}
+			}
+			start = end + 1;
+		}
+		return check(branch, callId);
+	}
+
+	/**
+	 * Checks a response whose top Via branch and Call-ID were already parsed,
+	 * e.g. by mjSIP's own transport.
+	 */
+	Verdict check(String branch, String callId) {
+		if (branch == null || branch.isEmpty() || callId == null || callId.isEmpty()) {
+			return Verdict.MALFORMED;
+		}
+		Transaction transaction = outstanding.get(branch);
+		return transaction != null && transaction.callId.equals(callId) ? Verdict.ACCEPTED : Verdict.UNMATCHED;
+	}
+
+	private void purge(long now) {
+		long due = nextPurge.get();
+		if (now - due >= 0 && nextPurge.compareAndSet(due, now + PURGE_EVERY)) {
+			outstanding.values().removeIf(transaction -> transaction.expiresAt != UNTIL_EXPIRED
+					&& now - transaction.expiresAt >= 0);
+		}
+	}
+
+	/**
+	 * @return the value of the {@code branch} parameter of the first Via in
+	 *         {@code message} between {@code from} and {@code to}, {@code null} if
+	 *         it has none
+	 */
+	private static String branch(byte[] message, int from, int to) {
+		for (int i = from; i < to; i++) {
+			byte c = message[i];
+			if (c == ',') {
+				// the next Via
+				return null;
+			}
+			if (c == ';') {
+				int name = skipBlanks(message, i + 1, to);
+				if (regionMatches(message, name, to, "branch")) {
+					int equals = skipBlanks(message, name + 6, to);
+					if (equals < to && message[equals] == '=') {
+						String branch = token(message, skipBlanks(message, equals + 1, to), to);
+						return branch.isEmpty() ? null : branch;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static boolean isHeader(byte[] message, int start, int colon, String name, String compactName) {
+		int nameEnd = colon;
+		while (nameEnd > start && isBlank(message[nameEnd - 1])) {
+			nameEnd--;
+		}
+		int nameLength = nameEnd - start;
+		return nameLength == name.length() && regionMatches(message, start, nameEnd, name)
+				|| nameLength == compactName.length() && regionMatches(message, start, nameEnd, compactName);
+	}
+
+	/**
+	 * @return whether the bytes from {@code from} on start with the ASCII
+	 *         {@code expected}, ignoring case
+	 */
+	private static boolean regionMatches(byte[] message, int from, int to, String expected) {
+		if (to - from < expected.length()) {
+			return false;
+		}
+		for (int i = 0; i < expected.length(); i++) {
+			if (Character.toLowerCase((char) (message[from + i] & 0xff)) != Character.toLowerCase(expected.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean startsWith(byte[] message, int from, int to, String prefix) {
+		if (to - from < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (message[from + i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String token(byte[] message, int from, int to) {
+		int end = from;
+		while (end < to) {
+			byte c = message[end];
+			if (c == ';' || c == ',' || isBlank(c) || c == '\r' || c == '\n') {
+				break;
+			}
+			end++;
+		}
+		// branches and Call-IDs are ASCII tokens
+		return new String(message, from, end - from, StandardCharsets.ISO_8859_1);
+	}
+
+	private static int skipBlanks(byte[] message, int from, int to) {
+		int i = from;
+		while (i < to && (isBlank(message[i]) || message[i] == '\r' || message[i] == '\n')) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int indexOf(byte[] message, char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (message[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int lineEnd(byte[] message, int from, int to) {
+		int end = indexOf(message, '\n', from, to);
+		return end < 0 ? to : end;
+	}
+
+	private static boolean isBlank(byte c) {
+		return c == ' ' || c == '\t';
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.random.RandomGenerator;
+
+/**
+ * When a failed call is placed again: if it failed with one of the
+ * {@code retryOn} status codes (e.g. {@code 408}, {@code 480}, {@code 486} or
+ * {@code 503}) and fewer than {@code maxAttempts} attempts were made. Before
+ * each retry the call waits an exponentially growing, jittered backoff, at
+ * least the server's {@code Retry-After}.
+ * <p>
+ * With any status code to retry on, the destinations and servers are also
+ * guarded by {@link CircuitBreakers}, so calls fail fast instead of adding to a
+ * retry storm.
+ *
+ * @param initialBackoff the backoff before the first retry, doubled for each
+ *                       further one up to {@link #MAX_BACKOFF}
+ */
+public record RetryPolicy(Set<Integer> retryOn, int maxAttempts, Duration initialBackoff) {
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final int DEFAULT_BACKOFF_MILLIS = 1000;
+	public static final Duration DEFAULT_BACKOFF = Duration.ofMillis(DEFAULT_BACKOFF_MILLIS);
+	public static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+	/** Every call is placed once, no circuit breakers. */
+	public static final RetryPolicy NONE = new RetryPolicy(Set.of(), 1, DEFAULT_BACKOFF);
+
+	public RetryPolicy {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be at least 1 but was " + maxAttempts);
+		}
+		if (initialBackoff.isNegative()) {
+			throw new IllegalArgumentException("initialBackoff must not be negative but was " + initialBackoff);
+		}
+		retryOn = Set.copyOf(retryOn);
+	}
+
+	/**
+	 * @param value a comma separated list of SIP status codes like
+	 *              {@code 408,480,486,503}
+	 */
+	public static Set<Integer> parseCodes(String value) {
+		Set<Integer> codes = new LinkedHashSet<>();
+		for (String entry : value.split(",")) {
+			String code = entry.strip();
+			if (code.isEmpty()) {
+				continue;
+			}
+			int parsed;
+			try {
+				parsed = Integer.parseInt(code);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("'%s' is not a status code".formatted(code));
+			}
+			if (parsed < 400 || parsed > 699) {
+				throw new IllegalArgumentException("%d is not a failure status code (400-699)".formatted(parsed));
+			}
+			codes.add(parsed);
+		}
+		return codes;
+	}
+
+	/**
+	 * @return whether failed calls are guarded by circuit breakers
+	 */
+	public boolean guardsCalls() {
+		return !retryOn.isEmpty();
+	}
+
+	/**
+	 * @return whether {@code result} failed with a status code to retry on. A
+	 *         server asking to retry after more than {@link #MAX_BACKOFF} is not
+	 *         retried.
+	 */
+	public boolean isRetryable(CallResult result) {
+		return !result.success() && retryOn.contains(result.statusCode())
+				&& result.retryAfterSeconds() <= MAX_BACKOFF.toSeconds();
+	}
+
+	/**
+	 * @param retry the number of the retry about to be made, starting at 1
+	 * @return a random backoff between half and all of {@code initialBackoff}
+	 *         doubled {@code retry - 1} times, but at least the result's
+	 *         {@code Retry-After}
+	 */
+	Duration backoff(int retry, CallResult result, RandomGenerator random) {
+		long capMillis = initialBackoff.toMillis();
+		for (int i = 1; i < retry && capMillis < MAX_BACKOFF.toMillis(); i++) {
+			capMillis *= 2;
+		}
+		capMillis = Math.min(capMillis, MAX_BACKOFF.toMillis());
+		long half = capMillis / 2;
+		long millis = half + random.nextLong(capMillis - half + 1);
+		return Duration.ofMillis(Math.max(millis, result.retryAfterSeconds() * 1000L));
+	}
+
+}
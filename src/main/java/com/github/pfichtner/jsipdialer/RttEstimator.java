@@ -0,0 +1,55 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smoothed round-trip time to the outbound proxy and the SIP timer T1 derived
+ * from it, computed like TCP's retransmission timeout (RFC 6298): the smoothed
+ * RTT plus four times its variation. RFC 3261 recommends 500 ms for T1 but
+ * allows less where the RTT is known to be smaller, e.g. towards a PBX on the
+ * same LAN, so a lost INVITE is retransmitted after a few dozen milliseconds
+ * instead of half a second.
+ * <p>
+ * Only responses to requests that were not retransmitted may be fed in (Karn's
+ * algorithm), otherwise it is unknown which copy the response answers.
+ */
+final class RttEstimator {
+
+	/**
+	 * The lower bound of the estimate. Below that the scheduler's and the JVM's
+	 * own jitter would cause spurious retransmissions.
+	 */
+	static final long MIN_T1_MILLIS = 50;
+
+	private long smoothedNanos = -1;
+	private long variationNanos;
+
+	/**
+	 * @param rttNanos the time between sending a request and receiving the first
+	 *                 response to it
+	 * @return the new T1 in milliseconds
+	 */
+	synchronized long sample(long rttNanos) {
+		if (smoothedNanos < 0) {
+			smoothedNanos = rttNanos;
+			variationNanos = rttNanos / 2;
+		} else {
+			variationNanos = (3 * variationNanos + Math.abs(smoothedNanos - rttNanos)) / 4;
+			smoothedNanos = (7 * smoothedNanos + rttNanos) / 8;
+		}
+		return t1Millis();
+	}
+
+	/**
+	 * @return T1 in milliseconds, RFC 3261's 500 ms as long as nothing was
+	 *         measured
+	 */
+	synchronized long t1Millis() {
+		if (smoothedNanos < 0) {
+			return TimerT1.DEFAULT.millis();
+		}
+		long estimate = TimeUnit.NANOSECONDS.toMillis(smoothedNanos + 4 * variationNanos);
+		return Math.clamp(estimate, MIN_T1_MILLIS, TimerT1.DEFAULT.millis());
+	}
+
+}
@@ -1,7 +1,23 @@
 package com.github.pfichtner.jsipdialer;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.BindException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 import org.apache.commons.cli.CommandLine;
@@ -18,6 +34,12 @@ public class SipClientMain {
 	public static final int DEFAULT_SIPPORT = 5060;
 	public static final int DEFAULT_TIMEOUT = 15;
 	public static final String DEFAULT_TRANSPORT = "udp";
+	public static final int DEFAULT_KEEP_ALIVE = 30;
+	public static final int DEFAULT_PROBE_INTERVAL = 10;
+	public static final int DEFAULT_CONCURRENCY = 1;
+	public static final int DEFAULT_CPS_BURST = 1;
+	public static final int DEFAULT_RETRY_BACKOFF = RetryPolicy.DEFAULT_BACKOFF_MILLIS;
+	public static final int DEFAULT_HTTP_QUEUE_SIZE = 100;
 
 	public static final String ENVVAR_SIP_USERNAME = "SIP_USERNAME";
 	public static final String ENVVAR_SIP_PASSWORD = "SIP_PASSWORD";
@@ -33,27 +55,57 @@ public class SipClientMain {
 	public static final String SIP_SERVER_ADDRESS = "sipServerAddress";
 	public static final String SIP_SERVER_PORT = "sipServerPort";
 	public static final String VIA_ADDRESS = "viaAddress";
+	public static final String LOCAL_PORT = "localPort";
+	public static final String DAEMON = "daemon";
+	public static final String VIRTUAL_THREADS = "virtualThreads";
+	public static final String NIO_TRANSPORT = "nioTransport";
+	public static final String KEEP_ALIVE = "keepAlive";
+	public static final String PROBE_INTERVAL = "probeInterval";
+	public static final String BATCH = "batch";
+	public static final String CONCURRENCY = "concurrency";
+	public static final String CPS = "cps";
+	public static final String CPS_BURST = "cpsBurst";
+	public static final String HTTP_PORT = "httpPort";
+	public static final String HTTP_QUEUE_SIZE = "httpQueueSize";
+	public static final String LOG_LEVEL = "logLevel";
+	public static final String METRICS_FILE = "metricsFile";
+	public static final String SUCCESS_ON = "successOn";
+	public static final String SIP_TIMER_T1 = "sipTimerT1";
+	public static final String RETRY_ON = "retryOn";
+	public static final String MAX_ATTEMPTS = "maxAttempts";
+	public static final String RETRY_BACKOFF = "retryBackoff";
 
 	public static final String HELP = "help";
 	public static final String HELP_SHORT_OPT = "h";
 
 	private static final java.util.List<String> SUPPORTED_TRANSPORTS = java.util.List.of(DEFAULT_TRANSPORT, "tcp");
 
+	// Built once and, in the native image, at build time (see
+	// native-image.properties), so a start does not have to build them again.
+	// The parser copies what it changes, so they can be shared. Defaults of other
+	// classes must be compile-time constants here, so building the options does
+	// not initialize those classes as well.
+	private static final Options OPTIONS = options(true);
+	private static final Options OPTIONS_WITHOUT_DESTINATION = options(false);
+
 	public static void main(String... args) throws Exception {
 		var exitCode = new SipClientMain().doMain(args);
+		EventLog.flush(1, TimeUnit.SECONDS);
 		System.exit(exitCode);
 	}
 
 	public int doMain(String[] args) throws Exception {
-		var options = options();
+		var options = OPTIONS;
 		if (isHelpRequested(args)) {
 			printHelp(options);
 			return 0;
 		}
+		var daemon = isDaemonRequested(args);
+		var batch = isBatchRequested(args);
 		var parser = new DefaultParser();
 
 		try {
-			var cmdLine = parser.parse(options, args);
+			var cmdLine = parser.parse(daemon || batch ? OPTIONS_WITHOUT_DESTINATION : options, args);
 			var sipConfig = new SipConfig(
 					requireNonNull(cmdLine.getOptionValue(USERNAME, env(ENVVAR_SIP_USERNAME)),
 							envErrorMessage(USERNAME, ENVVAR_SIP_USERNAME)),
@@ -77,23 +129,219 @@ public class SipClientMain {
 				throw new ParseException(
 						"Unsupported transport '%s', must be one of %s".formatted(transport, SUPPORTED_TRANSPORTS));
 			}
+			var localPorts = parseLocalPort(cmdLine);
+			var timerT1 = parseTimerT1(cmdLine.getOptionValue(SIP_TIMER_T1, TimerT1.DEFAULT.toString()));
+			var successCriterion = parseSuccessCriterion(
+					cmdLine.getOptionValue(SUCCESS_ON, SuccessCriterion.ANSWERED.optionValue()));
+			var retryPolicy = parseRetryPolicy(cmdLine);
+			EventLog.setLevel(parseLogLevel(cmdLine.getOptionValue(LOG_LEVEL, EventLog.Level.INFO.name())));
 			validateNoControlCharacters(serverAddress, SIP_SERVER_ADDRESS);
 			validateNoControlCharacters(destinationNumber, DESTINATION_NUMBER);
 			validateNoControlCharacters(callerName, CALLER_NAME);
 			validateNoControlCharacters(viaAddress, VIA_ADDRESS);
 			validateNoControlCharacters(sipConfig.username(), USERNAME);
 
-			var callService = createCallService(serverAddress, serverPort, sipConfig.username(),
-					sipConfig.password(), destinationNumber, callerName, timeout, transport, viaAddress);
-			if (!callService.call()) {
-				System.err.println("Call failed: " + callService.getReason());
-				return 1;
+			var endpointOptions = SipEndpoint.Options.of(serverAddress, serverPort, transport)
+					.withLocalPorts(localPorts).withViaAddress(viaAddress).withTimerT1(timerT1);
+			var metricsFile = Optional.ofNullable(cmdLine.getOptionValue(METRICS_FILE)).map(Path::of);
+			try {
+				if (daemon || batch) {
+					var execution = cmdLine.hasOption(VIRTUAL_THREADS) ? SipEndpoint.Execution.VIRTUAL
+							: SipEndpoint.Execution.PLATFORM;
+					var keepAlive = parseIntOption(cmdLine, KEEP_ALIVE, DEFAULT_KEEP_ALIVE, 0, Integer.MAX_VALUE);
+					var probeInterval = parseIntOption(cmdLine, PROBE_INTERVAL, DEFAULT_PROBE_INTERVAL, 0,
+							Integer.MAX_VALUE);
+					var concurrency = parseIntOption(cmdLine, CONCURRENCY, DEFAULT_CONCURRENCY, 1,
+							Integer.MAX_VALUE);
+					var cps = parseIntOption(cmdLine, CPS, 0, 0, Integer.MAX_VALUE);
+					var cpsBurst = parseIntOption(cmdLine, CPS_BURST, DEFAULT_CPS_BURST, 1, Integer.MAX_VALUE);
+					try (var in = batch ? openBatch(cmdLine.getOptionValue(BATCH))
+							: new BufferedReader(new InputStreamReader(System.in));
+							var endpoint = createEndpoint(endpointOptions.withExecution(execution)
+									.withKeepAliveSeconds(keepAlive).withProbeIntervalSeconds(probeInterval)
+									.withNioTransport(cmdLine.hasOption(NIO_TRANSPORT)))) {
+						if (batch) {
+							return runBatch(in, endpoint, sipConfig, callerName, timeout, successCriterion,
+									retryPolicy, new AccountThrottle(concurrency, cps, cpsBurst));
+						}
+						if (cmdLine.hasOption(HTTP_PORT)) {
+							var httpPort = parseIntOption(cmdLine, HTTP_PORT, 0, 0, 65535);
+							var queueSize = parseIntOption(cmdLine, HTTP_QUEUE_SIZE, DEFAULT_HTTP_QUEUE_SIZE, 1,
+									Integer.MAX_VALUE);
+							return runHttp(endpoint, sipConfig, callerName, timeout, successCriterion,
+									retryPolicy, new AccountThrottle(concurrency, cps, cpsBurst), httpPort, queueSize);
+						}
+						return runDaemon(in, endpoint, sipConfig, callerName, timeout, successCriterion,
+								retryPolicy, metricsFile);
+					}
+				}
+				var callService = createCallService(endpointOptions, sipConfig.username(), sipConfig.password(),
+						destinationNumber, callerName, timeout, successCriterion, retryPolicy);
+				if (!callService.call()) {
+					System.err.println("Call failed: " + callService.getReason());
+					return 1;
+				}
+				return 0;
+			} finally {
+				metricsFile.ifPresent(SipClientMain::writeMetrics);
 			}
-			return 0;
 		} catch (ParseException e) {
 			e.printStackTrace();
 			printHelp(options);
 			return 1;
+		} catch (UncheckedIOException e) {
+			if (!(e.getCause() instanceof BindException)) {
+				throw e;
+			}
+			System.err.println("Invalid value for '%s': %s".formatted(LOCAL_PORT, e.getCause().getMessage()));
+			return 1;
+		}
+	}
+
+	/**
+	 * Keeps one {@link SipEndpoint} alive and dials every destination number read
+	 * line by line from stdin, printing one result line per call to stdout. Returns
+	 * when stdin is closed. The metrics file, if any, is rewritten after every
+	 * call. A {@code Retry-After} of the SIP server delays the next call.
+	 */
+	private int runDaemon(BufferedReader in, SipEndpoint endpoint, SipConfig sipConfig, String callerName,
+			int timeout, SuccessCriterion successCriterion, RetryPolicy retryPolicy, Optional<Path> metricsFile)
+			throws Exception {
+		var callManager = createCallManager(endpoint, sipConfig, successCriterion, retryPolicy,
+				new AccountThrottle(1, 0, 1), 1);
+		String line;
+		while ((line = in.readLine()) != null) {
+			var destinationNumber = line.strip();
+			if (destinationNumber.isEmpty()) {
+				continue;
+			}
+			try {
+				validateNoControlCharacters(destinationNumber, DESTINATION_NUMBER);
+			} catch (ParseException e) {
+				printResult(destinationNumber, false, e.getMessage());
+				continue;
+			}
+			callManager.submit(destinationNumber, callerName, timeout)
+					.handle((result, e) -> printResult(destinationNumber, result, e)).join();
+			metricsFile.ifPresent(SipClientMain::writeMetrics);
+		}
+		return 0;
+	}
+
+	/**
+	 * Dials the destinations read line by line, each line being a number or
+	 * {@code number,callerName}. Calls are started as {@code throttle} allows, so
+	 * only as many ring at the same time and are started per second as configured
+	 * and none while the SIP server asked to retry later. Reading waits while a
+	 * call is waiting to be started, so the list is never held in memory. One
+	 * result line per call is printed as soon as it finishes.
+	 *
+	 * @return {@code 0} if all calls succeeded, {@code 1} otherwise
+	 */
+	private int runBatch(BufferedReader in, SipEndpoint endpoint, SipConfig sipConfig, String defaultCallerName,
+			int timeout, SuccessCriterion successCriterion, RetryPolicy retryPolicy, AccountThrottle throttle)
+			throws Exception {
+		var failed = new AtomicBoolean();
+		var printing = ConcurrentHashMap.<CompletableFuture<?>>newKeySet();
+		var callManager = createCallManager(endpoint, sipConfig, successCriterion, retryPolicy, throttle, 1);
+		String line;
+		while ((line = in.readLine()) != null) {
+			var columns = line.split(",", 2);
+			var destinationNumber = columns[0].strip();
+			if (destinationNumber.isEmpty() || destinationNumber.startsWith("#")) {
+				continue;
+			}
+			var callerName = columns.length > 1 && !columns[1].isBlank() ? columns[1].strip() : defaultCallerName;
+			try {
+				validateNoControlCharacters(destinationNumber, DESTINATION_NUMBER);
+				validateNoControlCharacters(callerName, CALLER_NAME);
+			} catch (ParseException e) {
+				failed.set(true);
+				printResult(destinationNumber, false, e.getMessage());
+				continue;
+			}
+			CompletableFuture<Void> printed = callManager.submit(destinationNumber, callerName, timeout)
+					.handle((result, e) -> printResult(destinationNumber, result, e))
+					.thenAccept(success -> {
+						if (!success) {
+							failed.set(true);
+						}
+					});
+			printing.add(printed);
+			printed.thenRun(() -> printing.remove(printed));
+		}
+		CompletableFuture.allOf(printing.toArray(CompletableFuture[]::new)).join();
+		return failed.get() ? 1 : 0;
+	}
+
+	/**
+	 * Serves call requests over HTTP, see {@link HttpControl}, until the process
+	 * is terminated. stdin is not read.
+	 */
+	private int runHttp(SipEndpoint endpoint, SipConfig sipConfig, String callerName, int timeout,
+			SuccessCriterion successCriterion, RetryPolicy retryPolicy, AccountThrottle throttle, int port,
+			int queueSize) throws Exception {
+		var terminated = new CountDownLatch(1);
+		try (var httpControl = new HttpControl(port, callerName, timeout,
+				createCallManager(endpoint, sipConfig, successCriterion, retryPolicy, throttle, queueSize))) {
+			System.err.println("Accepting calls on http://127.0.0.1:" + httpControl.port() + "/calls");
+			System.err.flush();
+			Runtime.getRuntime().addShutdownHook(new Thread(terminated::countDown, "http-shutdown"));
+			terminated.await();
+		}
+		return 0;
+	}
+
+	private CallManager createCallManager(SipEndpoint endpoint, SipConfig sipConfig,
+			SuccessCriterion successCriterion, RetryPolicy retryPolicy, AccountThrottle throttle, int queueSize) {
+		return new CallManager((destinationNumber, callerName, timeout) -> createCallService(endpoint,
+				sipConfig.username(), sipConfig.password(), destinationNumber, callerName, timeout, successCriterion,
+				retryPolicy), throttle, queueSize);
+	}
+
+	/**
+	 * @return whether the call succeeded
+	 */
+	private static boolean printResult(String destinationNumber, CallResult result, Throwable error) {
+		var success = error == null && result.success();
+		printResult(destinationNumber, success, error == null ? result.reason()
+				: String.valueOf(error instanceof CompletionException && error.getCause() != null
+						? error.getCause()
+						: error));
+		return success;
+	}
+
+	private static void printResult(String destinationNumber, boolean success, String reason) {
+		System.out.println(success ? destinationNumber + "\tOK" : destinationNumber + "\tFAILED\t" + reason);
+		System.out.flush();
+	}
+
+	/**
+	 * Replaces {@code file} with the current {@link CallMetrics} in Prometheus
+	 * text format. The metrics are written to a temporary file first, so a
+	 * collector (e.g. node_exporter's textfile collector) never reads a partial
+	 * file.
+	 */
+	private static void writeMetrics(Path file) {
+		var absolute = file.toAbsolutePath();
+		var temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+		try {
+			Files.writeString(temp, CallMetrics.global().toPrometheus());
+			Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("WARNING: Cannot write metrics to '%s': %s".formatted(file, e));
+			System.err.flush();
+		}
+	}
+
+	private static BufferedReader openBatch(String source) throws ParseException {
+		if ("-".equals(source)) {
+			return new BufferedReader(new InputStreamReader(System.in));
+		}
+		try {
+			return Files.newBufferedReader(Path.of(source));
+		} catch (IOException e) {
+			throw new ParseException("Cannot read '%s': %s".formatted(source, e));
 		}
 	}
 
@@ -105,11 +353,30 @@ public class SipClientMain {
 		return Arrays.asList(args).contains("-" + HELP_SHORT_OPT) || Arrays.asList(args).contains("--" + HELP);
 	}
 
-	protected CallService createCallService(String serverAddress, int serverPort, String username,
-			String password, String destinationNumber, String callerName, int timeout, String transport,
-			String viaAddress) {
-		return new CallService(serverAddress, serverPort, username, password,
-				destinationNumber, callerName, timeout, transport, CallService.DEFAULT_LOCAL_PORT, viaAddress);
+	private static boolean isDaemonRequested(String[] args) {
+		return Arrays.asList(args).contains("-" + DAEMON);
+	}
+
+	private static boolean isBatchRequested(String[] args) {
+		return Arrays.asList(args).contains("-" + BATCH);
+	}
+
+	protected CallService createCallService(SipEndpoint.Options endpointOptions, String username, String password,
+			String destinationNumber, String callerName, int timeout, SuccessCriterion successCriterion,
+			RetryPolicy retryPolicy) {
+		return new CallService(endpointOptions, username, password, destinationNumber, callerName, timeout,
+				successCriterion, retryPolicy);
+	}
+
+	protected SipEndpoint createEndpoint(SipEndpoint.Options options) {
+		return new SipEndpoint(options);
+	}
+
+	protected CallService createCallService(SipEndpoint endpoint, String username, String password,
+			String destinationNumber, String callerName, int timeout, SuccessCriterion successCriterion,
+			RetryPolicy retryPolicy) {
+		return new CallService(endpoint, username, password, destinationNumber, callerName, timeout,
+				successCriterion, retryPolicy);
 	}
 
 	private static String binaryName() {
@@ -144,6 +411,56 @@ public class SipClientMain {
 		return parsed;
 	}
 
+	private static PortRange parseLocalPort(CommandLine cmdLine) throws ParseException {
+		var value = cmdLine.getOptionValue(LOCAL_PORT, String.valueOf(CallService.DEFAULT_LOCAL_PORT));
+		try {
+			return PortRange.parse(value);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException("Invalid value for '%s': %s".formatted(LOCAL_PORT, e.getMessage()));
+		}
+	}
+
+	private static EventLog.Level parseLogLevel(String value) throws ParseException {
+		try {
+			return EventLog.Level.parse(value);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException("Unsupported log level '%s', must be one of %s".formatted(value,
+					Arrays.stream(EventLog.Level.values()).map(l -> l.name().toLowerCase()).toList()));
+		}
+	}
+
+	private static TimerT1 parseTimerT1(String value) throws ParseException {
+		try {
+			return TimerT1.parse(value);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException("Invalid value for '%s': %s".formatted(SIP_TIMER_T1, e.getMessage()));
+		}
+	}
+
+	private static RetryPolicy parseRetryPolicy(CommandLine cmdLine) throws ParseException {
+		if (!cmdLine.hasOption(RETRY_ON)) {
+			return RetryPolicy.NONE;
+		}
+		Set<Integer> retryOn;
+		try {
+			retryOn = RetryPolicy.parseCodes(cmdLine.getOptionValue(RETRY_ON));
+		} catch (IllegalArgumentException e) {
+			throw new ParseException("Invalid value for '%s': %s".formatted(RETRY_ON, e.getMessage()));
+		}
+		var maxAttempts = parseIntOption(cmdLine, MAX_ATTEMPTS, RetryPolicy.DEFAULT_MAX_ATTEMPTS, 1, 100);
+		var backoff = parseIntOption(cmdLine, RETRY_BACKOFF, DEFAULT_RETRY_BACKOFF, 0, Integer.MAX_VALUE);
+		return new RetryPolicy(retryOn, maxAttempts, Duration.ofMillis(backoff));
+	}
+
+	private static SuccessCriterion parseSuccessCriterion(String value) throws ParseException {
+		try {
+			return SuccessCriterion.parse(value);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException("Unsupported success criterion '%s', must be one of %s".formatted(value,
+					Arrays.stream(SuccessCriterion.values()).map(SuccessCriterion::optionValue).toList()));
+		}
+	}
+
 	private static void validateNoControlCharacters(String value, String name) throws ParseException {
 		if (value != null && value.chars().anyMatch(c -> c < 0x20 || c == 0x7F)) {
 			throw new ParseException(
@@ -151,21 +468,66 @@ public class SipClientMain {
 		}
 	}
 
-	private static Options options() {
+	/**
+	 * In daemon mode the destination numbers are read from stdin, so
+	 * {@value #DESTINATION_NUMBER} is not required on the command line.
+	 */
+	private static Options options(boolean destinationNumberRequired) {
 		return new Options()
 				.addOption(Option.builder(HELP_SHORT_OPT).longOpt(HELP).desc("print this help message").build())
-				.addRequiredOption(SIP_SERVER_ADDRESS, null, true, "ip/name of the sip server")
+				.addRequiredOption(SIP_SERVER_ADDRESS, null, true, "ip/name of the sip server (its SRV records are "
+						+ "used if there are any) or a comma separated list like pbx1:5060,pbx2 to fail over to")
 				.addOption(SIP_SERVER_PORT, null, true, "port number of the sip server")
 				.addOption(USERNAME, true,
 						"sip username (should better be passed via env var " + ENVVAR_SIP_USERNAME + ")")
 				.addOption(PASSWORD, true,
 						"sip password (should better be passed via env var " + ENVVAR_SIP_PASSWORD + ")")
-				.addRequiredOption(DESTINATION_NUMBER, null, true, "the number to call")
+				.addOption(Option.builder(DESTINATION_NUMBER).hasArg().required(destinationNumberRequired)
+						.desc("the number to call").build())
 				.addOption(CALLER_NAME, null, true, "the caller's name that gets displayed")
 				.addOption(TIMEOUT, true, "terminate call at most after x seconds")
+				.addOption(SUCCESS_ON, true, "answered, ringing or early-media: when a call counts as successful, "
+						+ "unless answered it is cancelled right away then (default: answered)")
 				.addOption(TRANSPORT, true, "transport protocol to use (udp or tcp)")
 				.addOption(VIA_ADDRESS, true,
-						"ip address to put into the Via header (default: auto-detect local address)");
+						"ip address to put into the Via header (default: auto-detect local address)")
+				.addOption(SIP_TIMER_T1, true, "ms after which an unanswered request is first retransmitted via "
+						+ "udp, an INVITE times out after 64 times that, or auto to measure the round-trip time to "
+						+ "the sip server (default: " + TimerT1.DEFAULT_MILLIS + ")")
+				.addOption(RETRY_ON, true, "comma separated sip status codes a failed call is placed again on, e.g. "
+						+ "408,480,486,503, also stops calling destinations and sip servers that keep failing for a "
+						+ "while (default: none)")
+				.addOption(MAX_ATTEMPTS, true, "with " + RETRY_ON + ", how often a call is placed at most (default: "
+						+ RetryPolicy.DEFAULT_MAX_ATTEMPTS + ")")
+				.addOption(RETRY_BACKOFF, true, "with " + RETRY_ON + ", ms to wait before the first retry, doubled "
+						+ "for every further one and jittered (default: " + DEFAULT_RETRY_BACKOFF + ")")
+				.addOption(LOCAL_PORT, true, "local sip port, 0 for any free port or a range like 20000-20100 "
+						+ "to take the first free one (default: " + CallService.DEFAULT_LOCAL_PORT + ")")
+				.addOption(DAEMON, false,
+						"keep running and call each destination number read from stdin (one per line)")
+				.addOption(BATCH, true, "call each destination read from this file (- for stdin), one number "
+						+ "or number,callerName per line")
+				.addOption(CONCURRENCY, true, "in batch/http mode the maximum number of calls at the same time "
+						+ "(default: " + DEFAULT_CONCURRENCY + ")")
+				.addOption(CPS, true, "in batch/http mode the maximum number of calls started per second "
+						+ "(default: unlimited)")
+				.addOption(CPS_BURST, true, "in batch/http mode how many calls may be started at once before "
+						+ CPS + " applies (default: " + DEFAULT_CPS_BURST + ")")
+				.addOption(HTTP_PORT, true, "in daemon mode accept calls via http on this port of localhost "
+						+ "instead of reading stdin")
+				.addOption(HTTP_QUEUE_SIZE, true, "in http mode the maximum number of waiting calls (default: "
+						+ DEFAULT_HTTP_QUEUE_SIZE + ")")
+				.addOption(VIRTUAL_THREADS, false, "in daemon/batch mode run per-call work on virtual threads")
+				.addOption(NIO_TRANSPORT, false, "in daemon/batch mode with udp, send and receive on one selector "
+						+ "thread with pooled direct buffers instead of mjSIP's blocking transport")
+				.addOption(KEEP_ALIVE, true, "in daemon/batch mode with tcp, seconds between keep-alives to the sip "
+						+ "server, 0 to disable (default: " + DEFAULT_KEEP_ALIVE + ")")
+				.addOption(PROBE_INTERVAL, true, "in daemon/batch mode with several sip servers, seconds between "
+						+ "OPTIONS probes to each, calls go to the live one with the fewest calls in progress, 0 to "
+						+ "disable (default: " + DEFAULT_PROBE_INTERVAL + ")")
+				.addOption(LOG_LEVEL, true, "debug, info, warn or off (default: info)")
+				.addOption(METRICS_FILE, true, "write call metrics in prometheus text format to this file when "
+						+ "done, in daemon mode after every call");
 	}
 
 	private static String envErrorMessage(String name, String envVar) {
@@ -0,0 +1,628 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.BindException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.header.CallIdHeader;
+import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.ConnectionId;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.provider.SipTransport;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+
+/**
+ * The long-lived part of a call: one bound {@link SipProvider} plus its
+ * scheduler, talking to a single outbound proxy. A one-shot {@link CallService}
+ * creates and closes its own endpoint; in daemon mode one endpoint is shared by
+ * many calls so socket bind and thread start are paid only once. Calls may run
+ * concurrently, messages are routed to them by Call-ID.
+ * <p>
+ * The proxy may be given as a list of servers or a host name with SRV records,
+ * see {@link SipServerResolver}. Requests of a call placed on another than the
+ * first one are sent to that call's {@link SipTarget} instead of the outbound
+ * proxy. With several servers a long-running endpoint can probe them and place
+ * each call on the live one with the fewest calls in progress, see
+ * {@link ProxyPool}.
+ * <p>
+ * Responses to requests the endpoint did not send are dropped unparsed, see
+ * {@link ResponseFilter}. With UDP, mjSIP's blocking transport can be replaced
+ * by a {@link NioUdpTransport}.
+ */
+public class SipEndpoint implements AutoCloseable {
+
+	/**
+	 * Where per-call work runs: the call's timeout and its tear-down once the
+	 * outcome is decided. mjSIP's receive thread and scheduler are shared by all
+	 * calls and not affected.
+	 */
+	public enum Execution {
+		/** The common fork/join pool. */
+		PLATFORM,
+		/** A new virtual thread per task, so thousands of calls cost no threads. */
+		VIRTUAL;
+
+		Executor executor() {
+			return this == VIRTUAL //
+					? task -> Thread.ofVirtual().name("jsipdialer-call").start(task) //
+					: ForkJoinPool.commonPool();
+		}
+	}
+
+	private final String serverAddress;
+	private final int serverPort;
+	private final String transport;
+	private final int localPort;
+	private final Executor callExecutor;
+	private final SipServerResolver resolver;
+	private final SipTarget primary;
+	private final SipConfig sipConfig;
+	private final SipProvider sipProvider;
+	private final Map<String, CallState> callsByCallId = new ConcurrentHashMap<>();
+	private final Map<InviteKey, CallState> pendingInvites = new ConcurrentHashMap<>();
+	private final DigestAuthCache authCache = new DigestAuthCache();
+	private final CircuitBreakers breakers = new CircuitBreakers();
+	private final ResponseFilter responseFilter = new ResponseFilter();
+	private final KeepAlive keepAlive;
+	private final ProxyPool pool;
+	private final ThreadLocal<CallState> dialing = new ThreadLocal<>();
+	// Only with TimerT1.AUTO: the send time of every request whose first
+	// response yields a round-trip time sample.
+	private final RttEstimator rttEstimator;
+	private final Map<InviteKey, Long> rttProbes = new ConcurrentHashMap<>();
+	private final CompletableFuture<Void> firstRttSample = new CompletableFuture<>();
+	private volatile long timerT1Millis;
+
+	/**
+	 * How an endpoint reaches the SIP server. Start with {@link #of} and change
+	 * what differs from the defaults with the {@code with...} methods.
+	 *
+	 * @param serverAddress        the SIP server, see {@link SipServerResolver}
+	 * @param localPorts           the local ports to bind to, see
+	 *                             {@link PortRange#bind}
+	 * @param viaAddress           the address put into Via and Contact,
+	 *                             {@code null} for the local one
+	 * @param keepAliveSeconds     with TCP, how often to refresh the connection to
+	 *                             the proxy, see {@link KeepAlive}, {@code 0} to
+	 *                             not refresh it
+	 * @param timerT1              SIP timer T1, with {@link TimerT1#AUTO} the
+	 *                             round-trip time to the proxy is measured with an
+	 *                             OPTIONS request before the constructor returns,
+	 *                             waiting at most 500 ms for its answer, and then
+	 *                             with every INVITE's first response
+	 * @param probeIntervalSeconds with more than one SIP server, seconds between
+	 *                             the OPTIONS probing them, see
+	 *                             {@link ProxyPool}, {@code 0} to try the servers
+	 *                             in the order they were resolved
+	 * @param nioTransport         with UDP, whether to send and receive with a
+	 *                             {@link NioUdpTransport} instead of mjSIP's own
+	 *                             transport
+	 */
+	public record Options(String serverAddress, int serverPort, String transport, PortRange localPorts,
+			String viaAddress, Execution execution, int keepAliveSeconds, TimerT1 timerT1, int probeIntervalSeconds,
+			boolean nioTransport) {
+
+		/**
+		 * @return any free local port, the local address in Via, platform threads,
+		 *         no keep-alive, the default T1 and no probing
+		 */
+		public static Options of(String serverAddress, int serverPort, String transport) {
+			return new Options(serverAddress, serverPort, transport, PortRange.EPHEMERAL, null, Execution.PLATFORM,
+					0, TimerT1.DEFAULT, 0, false);
+		}
+
+		/**
+		 * @param localPort {@code 0} for a free port chosen by the operating system
+		 */
+		public Options withLocalPort(int localPort) {
+			return withLocalPorts(PortRange.of(localPort));
+		}
+
+		public Options withLocalPorts(PortRange localPorts) {
+			return new Options(serverAddress, serverPort, transport, localPorts, viaAddress, execution,
+					keepAliveSeconds, timerT1, probeIntervalSeconds, nioTransport);
+		}
+
+		public Options withViaAddress(String viaAddress) {
+			return new Options(serverAddress, serverPort, transport, localPorts, viaAddress, execution,
+					keepAliveSeconds, timerT1, probeIntervalSeconds, nioTransport);
+		}
+
+		public Options withExecution(Execution execution) {
+			return new Options(serverAddress, serverPort, transport, localPorts, viaAddress, execution,
+					keepAliveSeconds, timerT1, probeIntervalSeconds, nioTransport);
+		}
+
+		public Options withKeepAliveSeconds(int keepAliveSeconds) {
+			return new Options(serverAddress, serverPort, transport, localPorts, viaAddress, execution,
+					keepAliveSeconds, timerT1, probeIntervalSeconds, nioTransport);
+		}
+
+		public Options withTimerT1(TimerT1 timerT1) {
+			return new Options(serverAddress, serverPort, transport, localPorts, viaAddress, execution,
+					keepAliveSeconds, timerT1, probeIntervalSeconds, nioTransport);
+		}
+
+		public Options withProbeIntervalSeconds(int probeIntervalSeconds) {
+			return new Options(serverAddress, serverPort, transport, localPorts, viaAddress, execution,
+					keepAliveSeconds, timerT1, probeIntervalSeconds, nioTransport);
+		}
+
+		public Options withNioTransport(boolean nioTransport) {
+			return new Options(serverAddress, serverPort, transport, localPorts, viaAddress, execution,
+					keepAliveSeconds, timerT1, probeIntervalSeconds, nioTransport);
+		}
+
+	}
+
+	/**
+	 * @throws UncheckedIOException with a {@link BindException} if none of the
+	 *                              options' local ports could be bound
+	 */
+	public SipEndpoint(Options options) {
+		String viaAddress = options.viaAddress();
+		TimerT1 timerT1 = options.timerT1();
+		this.resolver = new SipServerResolver(options.serverAddress(), options.serverPort(), options.transport());
+		this.primary = resolver.primary();
+		this.serverAddress = primary.host();
+		this.serverPort = primary.port();
+		this.transport = options.transport();
+		this.callExecutor = options.execution().executor();
+		this.rttEstimator = timerT1.isAuto() ? new RttEstimator() : null;
+		this.timerT1Millis = timerT1.isAuto() ? TimerT1.DEFAULT.millis() : timerT1.millis();
+
+		Binding binding;
+		try {
+			binding = options.localPorts().bind(transport, port -> bind(port, viaAddress, options.nioTransport()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.localPort = binding.port();
+		this.sipConfig = binding.sipConfig();
+		this.sipProvider = binding.sipProvider();
+
+		if ("tcp".equalsIgnoreCase(transport) && options.keepAliveSeconds() > 0) {
+			this.keepAlive = new KeepAlive(sipProvider, new SipURI(this.serverAddress, this.serverPort), transport,
+					viaAddress, this.localPort, options.keepAliveSeconds() * 1000L);
+			this.keepAlive.start();
+		} else {
+			this.keepAlive = null;
+		}
+		if (options.probeIntervalSeconds() > 0 && resolver.targets().size() > 1) {
+			this.pool = new ProxyPool(sipProvider, resolver::targets, transport, viaAddress, this.localPort,
+					options.probeIntervalSeconds() * 1000L);
+			this.pool.start();
+		} else {
+			this.pool = null;
+		}
+		if (rttEstimator != null) {
+			probeRtt(viaAddress);
+		}
+	}
+
+	private record Binding(int port, SipConfig sipConfig, SipProvider sipProvider) {
+	}
+
+	/**
+	 * Creates the provider, which binds its transport to {@code port}. mjSIP puts
+	 * the configured port into Via and Contact, so the port is never left to the
+	 * socket to pick.
+	 *
+	 * @throws BindException if {@code port} is in use
+	 */
+	private Binding bind(int port, String viaAddress, boolean nioTransport) throws IOException {
+		SipConfig sipConfig = new SipConfig();
+		sipConfig.setTransportProtocols(new String[] { transport });
+		sipConfig.setOutboundProxy(new SipURI(serverAddress, serverPort));
+		sipConfig.setHostPort(port);
+		if (viaAddress != null && !viaAddress.isBlank()) {
+			sipConfig.setViaAddrIPv4(viaAddress);
+		}
+		sipConfig.normalize();
+		if (timerT1Millis != TimerT1.DEFAULT.millis()) {
+			applyTimerT1(sipConfig, timerT1Millis);
+		}
+
+		// Override sendMessage to capture the actual INVITE that goes on the wire.
+		// mjSIP's TransactionClient.request() replaces the Via header with a new branch
+		// (via SipProvider.pickBranch()) before sending, so the SipMessage held by
+		// ExtendedCall/InviteDialog has a different branch than what was actually sent.
+		// When we later build a CANCEL on timeout, it must carry the same Via branch as
+		// the wire INVITE — otherwise Kamailio rejects it with "RFC3261 transaction
+		// matching failed". Capturing the message here is the simplest way to get the
+		// correct branch without reflection into Transaction internals.
+		SipProvider sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(new SchedulerConfig())) {
+			@Override
+			public ConnectionId sendMessage(SipMessage msg) {
+				if (msg.isInvite()) {
+					inviteSent(msg);
+				}
+				if (msg.isRequest() && !msg.isAck()) {
+					expectResponses(msg);
+				}
+				SipTarget target = targetOf(msg);
+				return target == null ? super.sendMessage(msg)
+						: super.sendMessage(msg, SipEndpoint.this.transport, target.host(), target.port(), 0);
+			}
+
+			// The ProxyPool sends its probes to a server directly. Responses to them
+			// have to pass the ResponseFilter as well, expecting a request twice on
+			// its way through both overloads does no harm.
+			@Override
+			public ConnectionId sendMessage(SipMessage msg, String proto, String destAddr, int destPort, int ttl) {
+				if (msg.isRequest() && !msg.isAck()) {
+					expectResponses(msg);
+				}
+				return super.sendMessage(msg, proto, destAddr, destPort, ttl);
+			}
+
+			@Override
+			public void onReceivedMessage(SipTransport transport, SipMessage msg) {
+				// the NIO transport checked the datagram before building msg
+				if (!(transport instanceof NioUdpTransport) && !accepted(msg)) {
+					return;
+				}
+				super.onReceivedMessage(transport, msg);
+				// Runs after mjSIP's transaction and dialog listeners have processed
+				// msg, so the fallback only decides calls they did not.
+				if (msg.isResponse()) {
+					fallback(msg);
+				}
+			}
+		};
+		// mjSIP only logs failing to bind its transport and goes on without one
+		if (!sipProvider.isSupportedTransport(transport)) {
+			halt(sipProvider);
+			throw new BindException("%s port %d is in use".formatted(transport, port));
+		}
+		// Promiscuous listeners fire BEFORE transaction/dialog listeners. A single
+		// one is registered for the whole lifetime of the provider; it logs every
+		// incoming message and records the timing of responses for the call they
+		// belong to.
+		sipProvider.addPromiscuousListener((provider, msg) -> received(msg));
+		if (nioTransport && NioUdpTransport.PROTOCOL.equalsIgnoreCase(transport)) {
+			useNioTransport(sipProvider, port);
+		}
+		return new Binding(port, sipConfig, sipProvider);
+	}
+
+	// mjSIP binds its own transport while the provider is constructed, so it is
+	// replaced afterwards, on the port the Via headers carry.
+	private void useNioTransport(SipProvider sipProvider, int port) throws IOException {
+		sipProvider.removeSipTransport(NioUdpTransport.PROTOCOL);
+		try {
+			sipProvider.addSipTransport(new NioUdpTransport(port, this::accepted));
+		} catch (IOException e) {
+			halt(sipProvider);
+			throw e;
+		}
+	}
+
+	private static void halt(SipProvider sipProvider) {
+		sipProvider.halt();
+		sipProvider.scheduler().scheduler().shutdownNow();
+	}
+
+	/**
+	 * @return the host of the first configured SIP server, the domain of the
+	 *         calls' URIs
+	 */
+	public String serverAddress() {
+		return serverAddress;
+	}
+
+	public int serverPort() {
+		return serverPort;
+	}
+
+	public String transport() {
+		return transport;
+	}
+
+	public int localPort() {
+		return localPort;
+	}
+
+	Executor callExecutor() {
+		return callExecutor;
+	}
+
+	SipProvider sipProvider() {
+		return sipProvider;
+	}
+
+	/**
+	 * Runs {@code placeInvite} on the current thread and binds the Call-ID of the
+	 * first INVITE it sends to {@code state}. mjSIP only picks the Call-ID while
+	 * sending, so this is the earliest point it is known. Later INVITEs of the same
+	 * call (e.g. the re-INVITE answering a 401 challenge) reuse the Call-ID and are
+	 * routed by it.
+	 */
+	void dial(CallState state, Runnable placeInvite) {
+		if (pool != null) {
+			pool.callStarted(state);
+		}
+		dialing.set(state);
+		try {
+			placeInvite.run();
+		} finally {
+			dialing.remove();
+		}
+	}
+
+	/**
+	 * Stops routing messages to {@code state}. Must be called once the call is
+	 * over (which at the latest happens when its timeout expires), otherwise the
+	 * state of every finished call would be retained.
+	 */
+	void release(CallState state) {
+		state.inviteKeys().forEach(key -> {
+			pendingInvites.remove(key, state);
+			rttProbes.remove(key);
+			responseFilter.expire(key.branch(), transactionTimeoutNanos());
+		});
+		state.callIds().forEach(callId -> callsByCallId.remove(callId, state));
+		if (pool != null) {
+			pool.callEnded(state);
+		}
+	}
+
+	/**
+	 * @return the servers to try a call on in this order, see
+	 *         {@link SipServerResolver}, with probing the live ones with the
+	 *         fewest calls in progress first
+	 */
+	List<SipTarget> targets() {
+		return pool == null ? resolver.targets() : pool.order(resolver.targets());
+	}
+
+	/**
+	 * @return the state of the probed servers, empty without probing
+	 */
+	List<ProxyPool.Health> health() {
+		return pool == null ? List.of() : pool.health();
+	}
+
+	int activeCalls() {
+		return callsByCallId.size();
+	}
+
+	DigestAuthCache authCache() {
+		return authCache;
+	}
+
+	CircuitBreakers breakers() {
+		return breakers;
+	}
+
+	int pendingInvites() {
+		return pendingInvites.size();
+	}
+
+	/**
+	 * @return the T1 new transactions currently start with, in milliseconds
+	 */
+	long timerT1Millis() {
+		return timerT1Millis;
+	}
+
+	/**
+	 * Sends one OPTIONS to the proxy and waits up to the default T1 for its answer,
+	 * so even the first INVITE of a one-shot call is sent with a measured T1. A
+	 * proxy that does not answer OPTIONS only delays the start by that much,
+	 * then T1 is learned from the INVITEs.
+	 */
+	private void probeRtt(String viaAddress) {
+		SipMessage options = OptionsRequest.create(new SipURI(serverAddress, serverPort), transport,
+				OptionsRequest.viaHost(viaAddress), localPort);
+		InviteKey key = InviteKey.of(options);
+		rttProbes.put(key, System.nanoTime());
+		try {
+			sipProvider.sendMessage(options);
+			firstRttSample.get(TimerT1.DEFAULT.millis(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | ExecutionException | RuntimeException e) {
+			EventLog.warn(() -> "RTT: no answer to OPTIONS from " + serverAddress + ", starting with T1 "
+					+ timerT1Millis + " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			rttProbes.remove(key);
+		}
+	}
+
+	private void sampleRtt(SipMessage response) {
+		InviteKey key = InviteKey.of(response);
+		Long sentAt = key == null ? null : rttProbes.remove(key);
+		if (sentAt == null) {
+			return;
+		}
+		long t1 = rttEstimator.sample(System.nanoTime() - sentAt);
+		firstRttSample.complete(null);
+		if (t1 != timerT1Millis) {
+			EventLog.debug(() -> "RTT: T1 is now " + t1 + " ms");
+			applyTimerT1(t1);
+		}
+	}
+
+	// mjSIP reads the timers from the config whenever it creates a transaction,
+	// so this applies to all requests sent from now on. Timer B (the INVITE
+	// transaction timeout) is 64*T1 as in RFC 3261.
+	private void applyTimerT1(long t1) {
+		timerT1Millis = t1;
+		applyTimerT1(sipConfig, t1);
+	}
+
+	private static void applyTimerT1(SipConfig sipConfig, long t1) {
+		sipConfig.setRetransmissionTimeout(t1);
+		sipConfig.setTransactionTimeout(64 * t1);
+	}
+
+	private void inviteSent(SipMessage invite) {
+		String callId = callId(invite);
+		if (callId == null) {
+			return;
+		}
+		CallState state = callsByCallId.get(callId);
+		if (state == null) {
+			state = dialing.get();
+			if (state == null) {
+				return;
+			}
+			state.registeredAs(callId);
+			callsByCallId.put(callId, state);
+		}
+		authCache.authorize(state.username(), serverOf(state), invite);
+		InviteKey key = InviteKey.of(invite);
+		if (key != null && pendingInvites.put(key, state) != null) {
+			CallMetrics.global().inviteRetransmitted();
+			// Karn's algorithm: the response may answer either copy
+			rttProbes.remove(key);
+		} else if (key != null && rttEstimator != null) {
+			rttProbes.put(key, System.nanoTime());
+		}
+		state.inviteSent(invite, key);
+	}
+
+	// The responses to a request are let through for as long as its transaction
+	// may last. Those to a call's INVITE are let through until the call is
+	// released, it may ring far longer than that.
+	private void expectResponses(SipMessage request) {
+		ViaHeader via = request.getViaHeader();
+		String callId = callId(request);
+		if (via == null || via.getBranch() == null || callId == null) {
+			return;
+		}
+		boolean ofCall = request.isInvite() && callsByCallId.containsKey(callId);
+		responseFilter.expect(via.getBranch(), callId,
+				ofCall ? ResponseFilter.UNTIL_EXPIRED : transactionTimeoutNanos());
+	}
+
+	/**
+	 * @return whether {@code msg}, received by one of mjSIP's transports, is
+	 *         handed to mjSIP, see {@link ResponseFilter}
+	 */
+	private boolean accepted(SipMessage msg) {
+		if (!msg.isResponse()) {
+			return true;
+		}
+		ViaHeader via = msg.getViaHeader();
+		return accepted(responseFilter.check(via == null ? null : via.getBranch(), callId(msg)));
+	}
+
+	/**
+	 * @return whether the datagram received by the {@link NioUdpTransport} is
+	 *         handed to mjSIP, see {@link ResponseFilter}
+	 */
+	private boolean accepted(byte[] datagram, int offset, int length) {
+		return accepted(responseFilter.check(datagram, offset, length));
+	}
+
+	private static boolean accepted(ResponseFilter.Verdict verdict) {
+		if (verdict == ResponseFilter.Verdict.MALFORMED) {
+			CallMetrics.global().malformedResponseDropped();
+		} else if (verdict == ResponseFilter.Verdict.UNMATCHED) {
+			CallMetrics.global().unmatchedResponseDropped();
+		}
+		if (verdict != ResponseFilter.Verdict.ACCEPTED) {
+			EventLog.debug(() -> "SIP DROP: " + verdict.name().toLowerCase() + " response");
+		}
+		return verdict == ResponseFilter.Verdict.ACCEPTED;
+	}
+
+	private long transactionTimeoutNanos() {
+		return TimeUnit.MILLISECONDS.toNanos(64 * timerT1Millis);
+	}
+
+	private void received(SipMessage msg) {
+		if (msg.isResponse()) {
+			int code = msg.getStatusLine().getCode();
+			EventLog.debug(() -> "SIP RECV: " + code + " " + msg.getStatusLine().getReason());
+			if (rttEstimator != null) {
+				sampleRtt(msg);
+			}
+			if (pool != null && pool.responseReceived(msg)) {
+				return;
+			}
+			CallState state = pendingInviteFor(msg);
+			if (state != null) {
+				state.responseObserved(msg);
+				if (code == 401 || code == 407) {
+					// Cached before mjSIP answers the challenge, so the re-INVITE
+					// it sends already counts against the new nonce.
+					authCache.challenged(state.username(), serverOf(state), state.password(), msg);
+				}
+			}
+		} else {
+			EventLog.debug(() -> "SIP RECV: " + msg.getRequestLine().getMethod() + " "
+					+ msg.getRequestLine().getAddress());
+		}
+	}
+
+	/**
+	 * @return where to send {@code msg} if its call was placed on another server
+	 *         than the outbound proxy, otherwise {@code null}
+	 */
+	private SipTarget serverOf(CallState state) {
+		SipTarget target = state.target();
+		return target == null ? primary : target;
+	}
+
+	private SipTarget targetOf(SipMessage msg) {
+		String callId = callId(msg);
+		CallState state = callId == null ? null : callsByCallId.get(callId);
+		SipTarget target = state == null ? null : state.target();
+		return target == null || target.equals(primary) ? null : target;
+	}
+
+	private void fallback(SipMessage response) {
+		// A final response completes the INVITE transaction, so its entry is
+		// evicted right away. A forged response with only the right Call-ID
+		// does not hit the index: the Via branch and From tag are random values
+		// chosen by mjSIP per request that only the real peer echoes back.
+		if (response.getStatusLine().getCode() >= 200 && CallService.isInviteResponse(response)) {
+			InviteKey key = InviteKey.of(response);
+			CallState state = key == null ? null : pendingInvites.remove(key);
+			if (state != null) {
+				state.finalResponseReceived(response);
+			}
+		}
+	}
+
+	private CallState pendingInviteFor(SipMessage response) {
+		if (!CallService.isInviteResponse(response)) {
+			return null;
+		}
+		InviteKey key = InviteKey.of(response);
+		return key == null ? null : pendingInvites.get(key);
+	}
+
+	private static String callId(SipMessage msg) {
+		CallIdHeader callIdHeader = msg.getCallIdHeader();
+		return callIdHeader == null ? null : callIdHeader.getCallId();
+	}
+
+	@Override
+	public void close() {
+		if (keepAlive != null) {
+			keepAlive.stop();
+		}
+		if (pool != null) {
+			pool.stop();
+		}
+		halt(sipProvider);
+	}
+
+}
@@ -0,0 +1,273 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import java.util.random.RandomGenerator;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * Turns the configured SIP server into the ordered list of addresses a call is
+ * tried on (RFC 3263), so a call can fail over to the next one if a server does
+ * not answer or is overloaded. The server address is either
+ * <ul>
+ * <li>a comma separated list like {@code pbx1:5060,pbx2}, tried in that order,
+ * <li>an IP address or
+ * <li>a host name, whose {@code _sip._udp} (or {@code _sip._tcp}) SRV records
+ * are looked up, ordered by priority and weight. Without SRV records its A/AAAA
+ * records are used.
+ * </ul>
+ * Entries without a port use the configured SIP server port, SRV records bring
+ * their own. Every address of a host name becomes a target of its own.
+ * <p>
+ * The result is cached for {@link #DEFAULT_TTL}, the JDK's DNS provider does
+ * not expose the records' TTLs. If resolving fails the previous result is kept,
+ * if there is none the server is used as configured and left to mjSIP.
+ */
+final class SipServerResolver {
+
+	static final Duration DEFAULT_TTL = Duration.ofSeconds(60);
+
+	/** The lookups, replaced by a stub in tests. */
+	interface Dns {
+
+		/**
+		 * @return the SRV records of {@code name}, empty if there are none
+		 */
+		List<SrvRecord> srv(String name) throws NamingException;
+
+		List<InetAddress> addresses(String host) throws UnknownHostException;
+
+	}
+
+	record SrvRecord(int priority, int weight, int port, String target) {
+	}
+
+	/** SRV via the JDK's JNDI DNS provider, A/AAAA via {@link InetAddress}. */
+	static final Dns SYSTEM_DNS = new Dns() {
+
+		@Override
+		public List<SrvRecord> srv(String name) throws NamingException {
+			Hashtable<String, String> env = new Hashtable<>();
+			env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+			env.put(Context.PROVIDER_URL, "dns:");
+			DirContext context = new InitialDirContext(env);
+			try {
+				Attribute attribute = context.getAttributes(name, new String[] { "SRV" }).get("SRV");
+				List<SrvRecord> records = new ArrayList<>();
+				if (attribute != null) {
+					for (NamingEnumeration<?> values = attribute.getAll(); values.hasMore();) {
+						String[] fields = values.next().toString().strip().split("\\s+");
+						String target = fields[3].endsWith(".") ? fields[3].substring(0, fields[3].length() - 1)
+								: fields[3];
+						records.add(new SrvRecord(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+								Integer.parseInt(fields[2]), target));
+					}
+				}
+				return records;
+			} catch (NameNotFoundException e) {
+				return List.of();
+			} finally {
+				context.close();
+			}
+		}
+
+		@Override
+		public List<InetAddress> addresses(String host) throws UnknownHostException {
+			return List.of(InetAddress.getAllByName(host));
+		}
+
+	};
+
+	private record Server(String host, int port, boolean portGiven) {
+
+		SipTarget target() {
+			return new SipTarget(host, port);
+		}
+
+		@Override
+		public String toString() {
+			return target().toString();
+		}
+
+	}
+
+	private record Resolved(List<SipTarget> targets, long expiresAt) {
+	}
+
+	private final List<Server> configured;
+	private final String transport;
+	private final Dns dns;
+	private final long ttlNanos;
+	private final LongSupplier nanoTime;
+	private final RandomGenerator random;
+
+	private volatile Resolved resolved;
+
+	SipServerResolver(String serverAddress, int serverPort, String transport) {
+		this(serverAddress, serverPort, transport, SYSTEM_DNS, DEFAULT_TTL, System::nanoTime, new Random());
+	}
+
+	SipServerResolver(String serverAddress, int serverPort, String transport, Dns dns, Duration ttl,
+			LongSupplier nanoTime, RandomGenerator random) {
+		this.configured = parse(serverAddress, serverPort);
+		this.transport = transport;
+		this.dns = dns;
+		this.ttlNanos = ttl.toNanos();
+		this.nanoTime = nanoTime;
+		this.random = random;
+	}
+
+	/**
+	 * @return the first server as configured, not resolved. Its host is the
+	 *         domain of the call's URIs.
+	 */
+	SipTarget primary() {
+		return configured.get(0).target();
+	}
+
+	/**
+	 * @return the addresses to try a call on in this order, never empty
+	 */
+	List<SipTarget> targets() {
+		Resolved current = resolved;
+		if (current != null && nanoTime.getAsLong() - current.expiresAt() < 0) {
+			return current.targets();
+		}
+		synchronized (this) {
+			current = resolved;
+			if (current != null && nanoTime.getAsLong() - current.expiresAt() < 0) {
+				return current.targets();
+			}
+			List<SipTarget> targets = resolve();
+			if (targets.isEmpty()) {
+				EventLog.warn(() -> "DNS: cannot resolve " + configured + ", using "
+						+ (resolved == null ? "it as is" : "the previous result"));
+				targets = resolved == null //
+						? configured.stream().map(Server::target).toList()
+						: resolved.targets();
+			}
+			resolved = new Resolved(targets, nanoTime.getAsLong() + ttlNanos);
+			return targets;
+		}
+	}
+
+	private List<SipTarget> resolve() {
+		Set<SipTarget> targets = new LinkedHashSet<>();
+		for (Server server : configured) {
+			if (configured.size() == 1 && !server.portGiven() && !isIpAddress(server.host())) {
+				List<SrvRecord> records = srv("_sip._" + transport.toLowerCase() + "." + server.host());
+				if (!records.isEmpty()) {
+					for (SrvRecord record : order(records, random)) {
+						addAddresses(targets, record.target(), record.port());
+					}
+					continue;
+				}
+			}
+			addAddresses(targets, server.host(), server.port());
+		}
+		List<SipTarget> result = List.copyOf(targets);
+		EventLog.debug(() -> "DNS: " + configured + " resolved to " + result);
+		return result;
+	}
+
+	private List<SrvRecord> srv(String name) {
+		try {
+			return dns.srv(name);
+		} catch (NamingException e) {
+			EventLog.debug(() -> "DNS: SRV lookup of " + name + " failed: " + e);
+			return List.of();
+		}
+	}
+
+	private void addAddresses(Set<SipTarget> targets, String host, int port) {
+		if (isIpAddress(host)) {
+			targets.add(new SipTarget(host, port));
+			return;
+		}
+		try {
+			for (InetAddress address : dns.addresses(host)) {
+				targets.add(new SipTarget(address.getHostAddress(), port));
+			}
+		} catch (UnknownHostException e) {
+			EventLog.warn(() -> "DNS: cannot resolve " + host + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Orders the records as RFC 2782 demands: by priority, within the same
+	 * priority randomly but in proportion to their weight.
+	 */
+	static List<SrvRecord> order(List<SrvRecord> records, RandomGenerator random) {
+		TreeMap<Integer, List<SrvRecord>> byPriority = new TreeMap<>();
+		for (SrvRecord record : records) {
+			if (!".".equals(record.target()) && !record.target().isEmpty()) {
+				byPriority.computeIfAbsent(record.priority(), p -> new ArrayList<>()).add(record);
+			}
+		}
+		List<SrvRecord> ordered = new ArrayList<>(records.size());
+		for (List<SrvRecord> group : byPriority.values()) {
+			// records of weight 0 first, so they have a small chance to be picked
+			group.sort(Comparator.comparingInt(SrvRecord::weight));
+			while (!group.isEmpty()) {
+				int total = group.stream().mapToInt(SrvRecord::weight).sum();
+				int pick = random.nextInt(total + 1);
+				int running = 0;
+				for (int i = 0; i < group.size(); i++) {
+					running += group.get(i).weight();
+					if (running >= pick) {
+						ordered.add(group.remove(i));
+						break;
+					}
+				}
+			}
+		}
+		return ordered;
+	}
+
+	private static List<Server> parse(String serverAddress, int serverPort) {
+		List<Server> servers = new ArrayList<>();
+		for (String entry : serverAddress.split(",")) {
+			String value = entry.strip();
+			if (value.isEmpty()) {
+				continue;
+			}
+			int portSeparator = value.startsWith("[") ? value.indexOf(':', value.indexOf(']'))
+					: value.indexOf(':') == value.lastIndexOf(':') ? value.indexOf(':') : -1;
+			String host = portSeparator < 0 ? value : value.substring(0, portSeparator);
+			host = host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host;
+			int port;
+			try {
+				port = portSeparator < 0 ? serverPort : Integer.parseInt(value.substring(portSeparator + 1));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid SIP server '%s'".formatted(value));
+			}
+			servers.add(new Server(host, port, portSeparator >= 0));
+		}
+		if (servers.isEmpty()) {
+			throw new IllegalArgumentException("No SIP server in '%s'".formatted(serverAddress));
+		}
+		return List.copyOf(servers);
+	}
+
+	private static boolean isIpAddress(String host) {
+		return host.indexOf(':') >= 0 || host.matches("\\d{1,3}(\\.\\d{1,3}){3}");
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.github.pfichtner.jsipdialer;
+
+/**
+ * One address a call's requests can be sent to instead of the endpoint's
+ * outbound proxy, as resolved by {@link SipServerResolver}.
+ */
+record SipTarget(String host, int port) {
+
+	@Override
+	public String toString() {
+		return host.indexOf(':') >= 0 ? "[" + host + "]:" + port : host + ":" + port;
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.util.Locale;
+
+import org.mjsip.sip.message.SipMessage;
+
+/**
+ * When a call counts as delivered. With anything but {@link #ANSWERED} the call
+ * is recorded as successful as soon as a provisional response meets the
+ * criterion and is then cancelled right away, so neither the line nor the
+ * process is held until the callee answers or the timeout expires. That is
+ * enough for alarms and wake-up calls where it only matters that the phone
+ * rang.
+ */
+public enum SuccessCriterion {
+
+	/** The callee accepted the call (final 2xx response). */
+	ANSWERED,
+	/** The callee's phone rang (180 Ringing or 183 Session Progress). */
+	RINGING,
+	/** The callee sent early media (183 Session Progress with SDP). */
+	EARLY_MEDIA;
+
+	/**
+	 * @param response a response to one of the call's INVITEs
+	 */
+	boolean isMetBy(SipMessage response) {
+		int code = response.getStatusLine().getCode();
+		return switch (this) {
+		case ANSWERED -> false;
+		case RINGING -> code == 180 || code == 183;
+		case EARLY_MEDIA -> code == 183 && response.hasBody();
+		};
+	}
+
+	/**
+	 * @param value the name as used on the command line, e.g. {@code early-media}
+	 */
+	public static SuccessCriterion parse(String value) {
+		return valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+	}
+
+	public String optionValue() {
+		return name().toLowerCase(Locale.ROOT).replace('_', '-');
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.github.pfichtner.jsipdialer;
+
+/**
+ * SIP timer T1 of a {@link SipEndpoint}: the estimated round-trip time, after
+ * which an unanswered request sent over UDP is retransmitted the first time.
+ * The interval doubles with each retransmission up to T2 (4 s) and an INVITE
+ * that got no response at all times out after 64*T1. Either a fixed number of
+ * milliseconds or {@link #AUTO} to derive it from the measured round-trip time
+ * to the proxy, see {@link RttEstimator}.
+ */
+public record TimerT1(int millis) {
+
+	/** T1 follows the measured round-trip time to the proxy. */
+	public static final TimerT1 AUTO = new TimerT1(0);
+
+	/** RFC 3261's recommendation, also mjSIP's default. */
+	public static final int DEFAULT_MILLIS = 500;
+
+	public static final TimerT1 DEFAULT = new TimerT1(DEFAULT_MILLIS);
+
+	/** T1 must not exceed T2, the retransmission interval's upper bound. */
+	public static final int MAX_MILLIS = 4000;
+
+	/**
+	 * @param millis {@code 0} for {@link #AUTO}
+	 */
+	public TimerT1 {
+		if (millis < 0 || millis > MAX_MILLIS) {
+			throw outOfRange(millis);
+		}
+	}
+
+	/**
+	 * @param value milliseconds ({@code 100}) or {@code auto}
+	 */
+	public static TimerT1 parse(String value) {
+		if ("auto".equalsIgnoreCase(value.strip())) {
+			return AUTO;
+		}
+		int millis;
+		try {
+			millis = Integer.parseInt(value.strip());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("'%s' is neither a number of milliseconds nor auto".formatted(value));
+		}
+		// measuring is turned on with auto only
+		if (millis == 0) {
+			throw outOfRange(millis);
+		}
+		return new TimerT1(millis);
+	}
+
+	private static IllegalArgumentException outOfRange(int millis) {
+		return new IllegalArgumentException("T1 must be auto or 1..%d ms, was %d".formatted(MAX_MILLIS, millis));
+	}
+
+	public boolean isAuto() {
+		return millis == 0;
+	}
+
+	@Override
+	public String toString() {
+		return isAuto() ? "auto" : String.valueOf(millis);
+	}
+
+}
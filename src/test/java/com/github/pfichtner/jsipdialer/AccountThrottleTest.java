@@ -0,0 +1,63 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pfichtner.jsipdialer.CallResult.DecidedBy;
+
+class AccountThrottleTest {
+
+	@Test
+	void capsTheCallsInProgress() {
+		AccountThrottle throttle = new AccountThrottle(2, 0, 1);
+		assertThat(throttle.tryAcquire()).isZero();
+		assertThat(throttle.tryAcquire()).isZero();
+		assertThat(throttle.tryAcquire()).isEqualTo(AccountThrottle.NO_SLOT);
+
+		throttle.release(result(0));
+		assertThat(throttle.tryAcquire()).isZero();
+	}
+
+	@Test
+	void limitsTheCallsStartedPerSecond() {
+		AccountThrottle throttle = new AccountThrottle(10, 1, 2);
+		assertThat(throttle.tryAcquire()).isZero();
+		assertThat(throttle.tryAcquire()).isZero();
+		assertThat(throttle.tryAcquire()).isPositive().isNotEqualTo(AccountThrottle.NO_SLOT);
+	}
+
+	@Test
+	void pausesNewCallsForTheRetryAfterOfAResult() {
+		AccountThrottle throttle = new AccountThrottle(2, 0, 1);
+		assertThat(throttle.tryAcquire()).isZero();
+
+		throttle.release(result(30));
+
+		assertThat(throttle.paused()).isPositive().isLessThanOrEqualTo(Duration.ofSeconds(30));
+		assertThat(throttle.tryAcquire()).isPositive().isNotEqualTo(AccountThrottle.NO_SLOT);
+	}
+
+	@Test
+	void aShorterRetryAfterDoesNotEndAPause() {
+		AccountThrottle throttle = new AccountThrottle(1, 0, 1);
+		throttle.pause(Duration.ofSeconds(60));
+		throttle.pause(Duration.ofSeconds(1));
+		assertThat(throttle.paused()).isGreaterThan(Duration.ofSeconds(30));
+	}
+
+	@Test
+	void pausesAtMostAnHour() {
+		AccountThrottle throttle = new AccountThrottle(1, 0, 1);
+		throttle.pause(Duration.ofDays(1));
+		assertThat(throttle.paused()).isLessThanOrEqualTo(AccountThrottle.MAX_PAUSE);
+	}
+
+	private static CallResult result(int retryAfterSeconds) {
+		return new CallResult(false, 503, "503 Service Unavailable", DecidedBy.DIALOG_LISTENER, false, 0, 0, 0, 0,
+				0, 0, retryAfterSeconds);
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.github.pfichtner.jsipdialer.SipEndpoint.Execution;
+
+/**
+ * Places many calls to {@link SimulatedCallees} over one endpoint and prints
+ * the calls completed per second and percentiles of the time to the final
+ * response and of the whole call. The callees' mix is 60% accept, 15% refuse,
+ * 10% ring then accept, 5% ring then decline, 5% 183 then refuse and 5%
+ * ignore (those are cancelled after the call timeout).
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.github.pfichtner.jsipdialer.CallLoadBenchmark \
+ *   -Dexec.args="[calls] [concurrency] [answerDelayMillis] [ringMillis]"
+ * </pre>
+ */
+public class CallLoadBenchmark {
+
+	private static final int CALL_TIMEOUT_SECONDS = 2;
+
+	public static void main(String... args) throws Exception {
+		int calls = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+		int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		Duration answerDelay = Duration.ofMillis(args.length > 2 ? Long.parseLong(args[2]) : 20);
+		Duration ringDuration = Duration.ofMillis(args.length > 3 ? Long.parseLong(args[3]) : 200);
+		EventLog.setLevel(EventLog.Level.OFF);
+
+		Map<CalleeBehavior, Integer> mix = new EnumMap<>(CalleeBehavior.class);
+		mix.put(CalleeBehavior.ACCEPT, 60);
+		mix.put(CalleeBehavior.REFUSE, 15);
+		mix.put(CalleeBehavior.RINGING_THEN_ACCEPT, 10);
+		mix.put(CalleeBehavior.RINGING_THEN_DECLINE, 5);
+		mix.put(CalleeBehavior.PROVISIONAL_183_THEN_REFUSE, 5);
+		mix.put(CalleeBehavior.IGNORE, 5);
+
+		try (SimulatedCallees callees = new SimulatedCallees(mix, answerDelay, ringDuration);
+				SipEndpoint endpoint = new SipEndpoint(
+						SipEndpoint.Options.of("127.0.0.1", callees.port(), "udp").withExecution(Execution.VIRTUAL));
+				CallManager callManager = new CallManager(endpoint, "user", "pass", concurrency)) {
+			List<CompletableFuture<CallResult>> results = new ArrayList<>(calls);
+			long start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				results.add(callManager.submit("callee" + i, null, CALL_TIMEOUT_SECONDS));
+			}
+			CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).handle((ignored, e) -> null).join();
+			long elapsedNanos = System.nanoTime() - start;
+
+			Map<String, Integer> outcomes = new TreeMap<>();
+			long[] finalResponse = new long[calls];
+			long[] total = new long[calls];
+			int answered = 0;
+			int failed = 0;
+			for (int i = 0; i < calls; i++) {
+				CallResult result = results.get(i).exceptionally(e -> null).join();
+				if (result == null) {
+					failed++;
+					continue;
+				}
+				outcomes.merge(result.statusCode() + " " + result.reason(), 1, Integer::sum);
+				total[i - failed] = result.totalDuration().toNanos();
+				if (result.timeToFinalResponse().isPresent()) {
+					finalResponse[answered++] = result.timeToFinalResponse().get().toNanos();
+				}
+			}
+
+			System.out.printf("%d calls, %d at a time, answer delay %d ms, ringing %d ms%n", calls, concurrency,
+					answerDelay.toMillis(), ringDuration.toMillis());
+			System.out.printf("%.1f calls/s over %.1f s, %d failed with an exception%n",
+					calls / (elapsedNanos / 1e9), elapsedNanos / 1e9, failed);
+			outcomes.forEach((outcome, count) -> System.out.printf("  %6d  %s%n", count, outcome));
+			printPercentiles("time to final response", Arrays.copyOf(finalResponse, answered));
+			printPercentiles("call duration", Arrays.copyOf(total, calls - failed));
+			System.out.printf("callees saw %d INVITEs, %d CANCELs, %d BYEs%n", callees.invitesReceived(),
+					callees.cancelsReceived(), callees.byesReceived());
+		}
+	}
+
+	private static void printPercentiles(String name, long[] nanos) {
+		if (nanos.length == 0) {
+			return;
+		}
+		Arrays.sort(nanos);
+		System.out.printf("%-22s p50 %7.1f ms  p90 %7.1f ms  p99 %7.1f ms  max %7.1f ms%n", name,
+				millis(nanos, 0.50), millis(nanos, 0.90), millis(nanos, 0.99), nanos[nanos.length - 1] / 1e6);
+	}
+
+	private static double millis(long[] sorted, double percentile) {
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, index)]) / 1e3;
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMessageFactory;
+import org.mjsip.sip.provider.SipConfig;
+
+import com.github.pfichtner.jsipdialer.CallResult.DecidedBy;
+
+class CallManagerTest {
+
+	private UserDependentSipServer server;
+
+	@AfterEach
+	void tearDown() throws Exception {
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	@Test
+	void concurrentCallsOnOneEndpointGetTheirOwnOutcome() throws Exception {
+		server = new UserDependentSipServer();
+		server.start();
+
+		try (SipEndpoint endpoint = new SipEndpoint(
+				SipEndpoint.Options.of("127.0.0.1", server.getPort(), "udp").withLocalPort(freeUdpPort()));
+				CallManager callManager = new CallManager(endpoint, "user", "pass", 10)) {
+			List<Future<CallResult>> accepted = new ArrayList<>();
+			List<Future<CallResult>> refused = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				accepted.add(callManager.submit("accept" + i, null, 5));
+				refused.add(callManager.submit("refuse" + i, null, 5));
+			}
+
+			for (Future<CallResult> result : accepted) {
+				assertThat(result.get(10, TimeUnit.SECONDS).success()).isTrue();
+			}
+			for (Future<CallResult> result : refused) {
+				CallResult callResult = result.get(10, TimeUnit.SECONDS);
+				assertThat(callResult.success()).isFalse();
+				assertThat(callResult.statusCode()).isEqualTo(603);
+			}
+			assertThat(callManager.activeCalls()).isZero();
+			assertThat(endpoint.activeCalls()).isZero();
+			assertThat(endpoint.pendingInvites()).isZero();
+		}
+	}
+
+	@Test
+	void startsNoMoreCallsThanTheThrottleAllows() throws Exception {
+		List<CompletableFuture<CallResult>> ringing = new CopyOnWriteArrayList<>();
+		try (CallManager callManager = new CallManager((destinationNumber, callerName, timeout) -> call(ringing),
+				new AccountThrottle(2, 0, 1), 10)) {
+			var results = List.of(callManager.submit("1", null, 5), callManager.submit("2", null, 5),
+					callManager.submit("3", null, 5));
+
+			assertThat(callManager.activeCalls()).isEqualTo(2);
+			ringing.get(0).complete(result(true, 200, 0));
+			assertThat(callManager.activeCalls()).isEqualTo(2);
+			ringing.get(1).complete(result(true, 200, 0));
+			ringing.get(2).complete(result(true, 200, 0));
+
+			assertThat(results).allSatisfy(result -> assertThat(result).isCompleted());
+			assertThat(callManager.activeCalls()).isZero();
+		}
+	}
+
+	@Test
+	void rejectsCallsIfTheQueueIsFull() throws Exception {
+		List<CompletableFuture<CallResult>> ringing = new CopyOnWriteArrayList<>();
+		CallManager callManager = new CallManager((destinationNumber, callerName, timeout) -> call(ringing),
+				new AccountThrottle(1, 0, 1), 1);
+		List<String> started = new ArrayList<>();
+
+		callManager.trySubmit("1", null, 5, () -> started.add("1"));
+		callManager.trySubmit("2", null, 5, () -> started.add("2"));
+
+		assertThatThrownBy(() -> callManager.trySubmit("3", null, 5, () -> started.add("3")))
+				.isInstanceOf(RejectedExecutionException.class);
+		assertThat(started).containsExactly("1");
+		ringing.get(0).complete(result(true, 200, 0));
+		assertThat(started).containsExactly("1", "2");
+		ringing.get(1).complete(result(true, 200, 0));
+	}
+
+	@Test
+	void queuedCallsWaitWhileTheServerAsksToRetryLater() throws Exception {
+		List<CompletableFuture<CallResult>> ringing = new CopyOnWriteArrayList<>();
+		try (CallManager callManager = new CallManager((destinationNumber, callerName, timeout) -> call(ringing),
+				new AccountThrottle(1, 0, 1), 10)) {
+			callManager.submit("1", null, 5);
+			var queued = callManager.submit("2", null, 5);
+
+			ringing.get(0).complete(result(false, 503, 1));
+
+			assertThat(callManager.paused()).isPositive();
+			assertThat(callManager.activeCalls()).isZero();
+			await().atMost(5, TimeUnit.SECONDS).until(() -> ringing.size() == 2);
+			assertThat(callManager.paused()).isZero();
+			ringing.get(1).complete(result(true, 200, 0));
+			assertThat(queued).isCompleted();
+		}
+	}
+
+	private static CallService call(List<CompletableFuture<CallResult>> ringing) {
+		CompletableFuture<CallResult> result = new CompletableFuture<>();
+		ringing.add(result);
+		return new CallService(null, 0, null, null, null, null, 0, null) {
+			@Override
+			public CompletableFuture<CallResult> callAsync() {
+				return result;
+			}
+		};
+	}
+
+	private static CallResult result(boolean success, int statusCode, int retryAfterSeconds) {
+		return new CallResult(success, statusCode, null, DecidedBy.DIALOG_LISTENER, false, 0, 0, 0, 0, 0, 0,
+				retryAfterSeconds);
+	}
+
+	private static int freeUdpPort() throws Exception {
+		try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"))) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * Accepts INVITEs whose request-URI contains {@code accept} and
+	 * declines all others.
+	 */
+	private static final class UserDependentSipServer {
+
+		private final DatagramSocket socket;
+		private final AtomicBoolean running = new AtomicBoolean(true);
+		private Thread thread;
+
+		UserDependentSipServer() throws Exception {
+			socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+		}
+
+		int getPort() {
+			return socket.getLocalPort();
+		}
+
+		void start() {
+			thread = new Thread(this::run, "user-dependent-sip-server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void stop() throws Exception {
+			running.set(false);
+			socket.close();
+			thread.join(5000);
+		}
+
+		private void run() {
+			byte[] buf = new byte[65536];
+			SipMessageFactory factory = new SipMessageFactory(new SipConfig());
+			while (running.get()) {
+				try {
+					DatagramPacket packet = new DatagramPacket(buf, buf.length);
+					socket.receive(packet);
+					byte[] data = Arrays.copyOf(packet.getData(), packet.getLength());
+					SipMessage request = new SipMessage(data, 0, data.length);
+					if (request.isInvite()) {
+						String user = request.getRequestLine().getAddress().toString();
+						SipMessage response = user.contains("accept")
+								? factory.createResponse(request, 200, "OK", null)
+								: factory.createResponse(request, 603, "Declined", null);
+						byte[] out = response.getBytes();
+						socket.send(new DatagramPacket(out, out.length, packet.getAddress(), packet.getPort()));
+					}
+				} catch (Exception e) {
+					if (running.get()) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.github.pfichtner.jsipdialer;
+
+import static com.github.pfichtner.jsipdialer.CallResult.NOT_REACHED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pfichtner.jsipdialer.CallResult.DecidedBy;
+
+class CallMetricsTest {
+
+	private static final long MILLIS = 1_000_000;
+
+	private final CallMetrics metrics = new CallMetrics();
+
+	@Test
+	void countsOutcomesAndDecisions() {
+		metrics.callStarted();
+		metrics.callStarted();
+		metrics.callStarted();
+		metrics.inviteRetransmitted();
+		metrics.callEnded(new CallResult(true, 200, "OK", DecidedBy.DIALOG_LISTENER, false, 0, 10 * MILLIS,
+				20 * MILLIS, 30 * MILLIS, 1500 * MILLIS, 1600 * MILLIS, 0));
+		metrics.callEnded(new CallResult(false, 486, "486 Busy Here", DecidedBy.FALLBACK, false, 0, 10 * MILLIS,
+				NOT_REACHED, NOT_REACHED, 200 * MILLIS, 300 * MILLIS, 0));
+
+		assertThat(metrics.toPrometheus()).contains( //
+				"jsipdialer_calls_started_total 3\n", //
+				"jsipdialer_calls_succeeded_total 1\n", //
+				"jsipdialer_calls_in_flight 1\n", //
+				"jsipdialer_call_outcomes_total{status_code=\"200\"} 1\n", //
+				"jsipdialer_call_outcomes_total{status_code=\"486\"} 1\n", //
+				"jsipdialer_call_decisions_total{decided_by=\"fallback\"} 1\n", //
+				"jsipdialer_call_decisions_total{decided_by=\"timeout\"} 0\n", //
+				"jsipdialer_invite_retransmissions_total 1\n", //
+				"jsipdialer_post_dial_delay_seconds_count 1\n", //
+				"jsipdialer_time_to_answer_seconds_count 1\n", //
+				"jsipdialer_call_duration_seconds_count 2\n");
+	}
+
+	@Test
+	void countsDroppedResponses() {
+		metrics.unmatchedResponseDropped();
+		metrics.unmatchedResponseDropped();
+		metrics.malformedResponseDropped();
+
+		assertThat(metrics.toPrometheus()).contains("jsipdialer_responses_dropped_total{reason=\"unmatched\"} 2\n",
+				"jsipdialer_responses_dropped_total{reason=\"malformed\"} 1\n");
+	}
+
+	@Test
+	void countsCancels() {
+		metrics.callStarted();
+		metrics.callEnded(new CallResult(false, 0, null, DecidedBy.TIMEOUT, true, 0, 0, NOT_REACHED, NOT_REACHED,
+				NOT_REACHED, 15_000 * MILLIS, 0));
+
+		assertThat(metrics.toPrometheus()).contains("jsipdialer_cancels_sent_total 1\n",
+				"jsipdialer_call_outcomes_total{status_code=\"0\"} 1\n", "jsipdialer_calls_in_flight 0\n");
+	}
+
+	@Test
+	void histogramBucketsAreCumulative() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Duration.ofNanos(500_000));
+		histogram.record(Duration.ofMillis(1));
+		histogram.record(Duration.ofMillis(3));
+		histogram.record(Duration.ofMinutes(5));
+
+		StringBuilder out = new StringBuilder();
+		histogram.writePrometheus(out, "latency_seconds", "Latency.");
+
+		assertThat(histogram.count()).isEqualTo(4);
+		assertThat(out).contains( //
+				"# TYPE latency_seconds histogram\n", //
+				"latency_seconds_bucket{le=\"0.001\"} 2\n", //
+				"latency_seconds_bucket{le=\"0.003364\"} 3\n", //
+				"latency_seconds_bucket{le=\"65.536\"} 3\n", //
+				"latency_seconds_bucket{le=\"+Inf\"} 4\n", //
+				"latency_seconds_count 4\n");
+	}
+
+}
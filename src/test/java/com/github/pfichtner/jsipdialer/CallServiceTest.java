@@ -5,7 +5,11 @@ import static org.assertj.core.api.Assertions.assertThat;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -17,6 +21,7 @@ import org.mjsip.sip.header.CSeqHeader;
 import org.mjsip.sip.header.CallIdHeader;
 import org.mjsip.sip.header.ContactHeader;
 import org.mjsip.sip.header.FromHeader;
+import org.mjsip.sip.header.Header;
 import org.mjsip.sip.header.RequestLine;
 import org.mjsip.sip.header.SipHeaders;
 import org.mjsip.sip.header.StatusLine;
@@ -127,6 +132,119 @@ class CallServiceTest {
 		assertThat(server.invitesReceived()).isGreaterThanOrEqualTo(1);
 	}
 
+	@Test
+	void callAsyncCompletesWithTheOutcome() throws Exception {
+		server = new FakeSipServer();
+		server.start();
+
+		CallService callService = new CallService("127.0.0.1", server.getPort(), "user", "pass", "callee", "caller",
+				5, "udp", freeUdpPort());
+
+		CompletableFuture<CallResult> result = callService.callAsync();
+
+		assertThat(result.get(5, TimeUnit.SECONDS).success()).isTrue();
+		assertThat(callService.getReason()).isEqualTo("OK");
+	}
+
+	@Test
+	void resultCarriesStatusCodeAndPhaseTimings() throws Exception {
+		server = new FakeSipServer();
+		server.start();
+
+		CallService callService = new CallService("127.0.0.1", server.getPort(), "user", "pass", "callee", "caller",
+				5, "udp", freeUdpPort());
+
+		CallResult result = callService.callAsync().get(5, TimeUnit.SECONDS);
+
+		assertThat(result.success()).isTrue();
+		assertThat(result.statusCode()).isEqualTo(200);
+		assertThat(result.decidedBy()).isEqualTo(CallResult.DecidedBy.DIALOG_LISTENER);
+		assertThat(result.cancelSent()).isFalse();
+		assertThat(result.timeToFinalResponse()).hasValueSatisfying(d -> assertThat(d).isPositive());
+		assertThat(result.postDialDelay()).isEmpty();
+		assertThat(callService.getResult()).isEqualTo(result);
+	}
+
+	@Test
+	void failsOverToTheNextServerIfTheFirstDoesNotAnswer() throws Exception {
+		try (DatagramSocket blackHole = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+				SimulatedCallees callees = new SimulatedCallees(CalleeBehavior.ACCEPT);
+				// Timer B, after which the first server is given up, is 64*T1
+				SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options
+						.of("127.0.0.1:" + blackHole.getLocalPort() + ",127.0.0.1:" + callees.port(), 5060, "udp")
+						.withViaAddress("127.0.0.1").withTimerT1(new TimerT1(10)))) {
+			CallService callService = new CallService(endpoint, "user", "pass", "accept1", null, 10,
+					SuccessCriterion.ANSWERED, RetryPolicy.NONE);
+
+			CallResult result = callService.callAsync().get(10, TimeUnit.SECONDS);
+
+			assertThat(result.success()).isTrue();
+			assertThat(result.statusCode()).isEqualTo(200);
+			assertThat(callees.invitesReceived()).isEqualTo(1);
+			assertThat(callService.getResult()).isEqualTo(result);
+		}
+	}
+
+	@Test
+	void placesAFailedCallAgainUpToMaxAttempts() throws Exception {
+		try (SimulatedCallees callees = new SimulatedCallees(CalleeBehavior.REFUSE);
+				SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options
+						.of("127.0.0.1:" + callees.port(), 5060, "udp").withViaAddress("127.0.0.1")
+						.withTimerT1(new TimerT1(10)))) {
+			CallService callService = new CallService(endpoint, "user", "pass", "refuse1", null, 10,
+					SuccessCriterion.ANSWERED, new RetryPolicy(Set.of(403), 3, Duration.ZERO));
+			long callsStarted = callsStarted();
+
+			CallResult result = callService.callAsync().get(10, TimeUnit.SECONDS);
+
+			assertThat(result.success()).isFalse();
+			assertThat(result.statusCode()).isEqualTo(403);
+			assertThat(callees.invitesReceived()).isEqualTo(3);
+			assertThat(callService.getResult()).isEqualTo(result);
+			// the attempts are one call
+			assertThat(callsStarted()).isEqualTo(callsStarted + 1);
+		}
+	}
+
+	private static long callsStarted() {
+		String metric = "jsipdialer_calls_started_total ";
+		return CallMetrics.global().toPrometheus().lines().filter(line -> line.startsWith(metric))
+				.mapToLong(line -> Long.parseLong(line.substring(metric.length()))).findFirst().orElseThrow();
+	}
+
+	@Test
+	void onlyServerFailuresCauseAFailover() {
+		assertThat(CallService.isServerFailure(result(503, CallResult.NOT_REACHED))).isTrue();
+		assertThat(CallService.isServerFailure(result(408, CallResult.NOT_REACHED))).isTrue();
+		assertThat(CallService.isServerFailure(result(408, 1))).isFalse();
+		assertThat(CallService.isServerFailure(result(486, CallResult.NOT_REACHED))).isFalse();
+		assertThat(CallService.isServerFailure(result(0, CallResult.NOT_REACHED))).isFalse();
+	}
+
+	@Test
+	void reportsTheRetryAfterOfA503() {
+		CallState state = new CallState("user", "pass", SuccessCriterion.ANSWERED);
+		SipMessage overloaded = response(503, "z9hG4bK1", "call-1", "tag-1", SipMethods.INVITE);
+		overloaded.setHeader(new Header("Retry-After", "120 (overloaded);duration=60"));
+
+		state.responseObserved(overloaded);
+
+		assertThat(state.toResult().retryAfterSeconds()).isEqualTo(120);
+	}
+
+	@Test
+	void ignoresAMissingOrInvalidRetryAfter() {
+		SipMessage overloaded = response(503, "z9hG4bK1", "call-1", "tag-1", SipMethods.INVITE);
+		assertThat(CallState.retryAfterSeconds(overloaded)).isZero();
+		overloaded.setHeader(new Header("Retry-After", "soon"));
+		assertThat(CallState.retryAfterSeconds(overloaded)).isZero();
+	}
+
+	private static CallResult result(int statusCode, long firstProvisionalAt) {
+		return new CallResult(false, statusCode, null, CallResult.DecidedBy.DIALOG_LISTENER, false, 0, 0,
+				firstProvisionalAt, CallResult.NOT_REACHED, CallResult.NOT_REACHED, 0, 0);
+	}
+
 	private static SipMessage invite(String branch, String callId, String fromTag) {
 		SipMessage msg = new SipMessage();
 		msg.setRequestLine(new RequestLine(SipMethods.INVITE, new SipURI("alice", "example.com")));
@@ -0,0 +1,79 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakersTest {
+
+	private static final String KEY = CircuitBreakers.destination("0123");
+
+	private final AtomicLong now = new AtomicLong();
+	private final CircuitBreakers breakers = new CircuitBreakers(now::get);
+
+	@Test
+	void opensAfterTooManyFailuresInARow() {
+		failTimes(CircuitBreakers.FAILURE_THRESHOLD - 1);
+		assertThat(breakers.allows(KEY)).isTrue();
+
+		breakers.failed(KEY);
+		assertThat(breakers.allows(KEY)).isFalse();
+		assertThat(breakers.allows(CircuitBreakers.destination("0456"))).isTrue();
+	}
+
+	@Test
+	void aSuccessResetsTheFailures() {
+		failTimes(CircuitBreakers.FAILURE_THRESHOLD - 1);
+		breakers.succeeded(KEY);
+		breakers.failed(KEY);
+		assertThat(breakers.allows(KEY)).isTrue();
+	}
+
+	@Test
+	void letsOneTrialCallThroughAfterTheOpenPeriod() {
+		failTimes(CircuitBreakers.FAILURE_THRESHOLD);
+		elapse(CircuitBreakers.OPEN_FOR.toNanos());
+
+		assertThat(breakers.allows(KEY)).isTrue();
+		assertThat(breakers.allows(KEY)).isFalse();
+
+		breakers.succeeded(KEY);
+		assertThat(breakers.allows(KEY)).isTrue();
+		assertThat(breakers.allows(KEY)).isTrue();
+	}
+
+	@Test
+	void aFailedTrialCallOpensTheBreakerAgain() {
+		failTimes(CircuitBreakers.FAILURE_THRESHOLD);
+		elapse(CircuitBreakers.OPEN_FOR.toNanos());
+		assertThat(breakers.allows(KEY)).isTrue();
+
+		breakers.failed(KEY);
+		elapse(CircuitBreakers.OPEN_FOR.toNanos() - 1);
+		assertThat(breakers.allows(KEY)).isFalse();
+		elapse(1);
+		assertThat(breakers.allows(KEY)).isTrue();
+	}
+
+	@Test
+	void callsPlacedBeforeTheBreakerOpenedDoNotProlongIt() {
+		failTimes(CircuitBreakers.FAILURE_THRESHOLD);
+		elapse(CircuitBreakers.OPEN_FOR.toNanos() / 2);
+		breakers.failed(KEY);
+		elapse(CircuitBreakers.OPEN_FOR.toNanos() / 2);
+		assertThat(breakers.allows(KEY)).isTrue();
+	}
+
+	private void failTimes(int times) {
+		for (int i = 0; i < times; i++) {
+			breakers.failed(KEY);
+		}
+	}
+
+	private void elapse(long nanos) {
+		now.addAndGet(nanos);
+	}
+
+}
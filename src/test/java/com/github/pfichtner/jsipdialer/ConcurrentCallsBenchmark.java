@@ -0,0 +1,114 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.github.pfichtner.jsipdialer.SipEndpoint.Execution;
+
+/**
+ * Places 1, 100 and 1000 concurrent calls against a UDP socket that never
+ * answers, so all calls stay in flight until their timeout, and prints the
+ * number of live platform threads and the used heap while they ring. Every call
+ * is placed the blocking way, by a caller thread of the execution mode's kind
+ * calling {@link CallService#call()}.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.github.pfichtner.jsipdialer.ConcurrentCallsBenchmark
+ * </pre>
+ */
+public class ConcurrentCallsBenchmark {
+
+	private static final int[] CONCURRENT_CALLS = { 1, 100, 1000 };
+	private static final int CALL_TIMEOUT_SECONDS = 4;
+	private static final long SETTLE_MILLIS = 2000;
+
+	public static void main(String... args) throws Exception {
+		EventLog.setLevel(EventLog.Level.OFF);
+		System.out.printf("%-9s %6s %16s %12s%n", "mode", "calls", "platform threads", "heap used MB");
+		for (Execution execution : Execution.values()) {
+			for (int calls : CONCURRENT_CALLS) {
+				run(execution, calls);
+			}
+		}
+	}
+
+	private static void run(Execution execution, int calls) throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		try (BlackHole blackHole = new BlackHole();
+				SipEndpoint endpoint = new SipEndpoint(
+						SipEndpoint.Options.of("127.0.0.1", blackHole.port(), "udp").withExecution(execution))) {
+			CountDownLatch done = new CountDownLatch(calls);
+			List<Thread> callers = new ArrayList<>(calls);
+			for (int i = 0; i < calls; i++) {
+				CallService callService = new CallService(endpoint, "user", "pass", "callee" + i, null,
+						CALL_TIMEOUT_SECONDS, SuccessCriterion.ANSWERED, RetryPolicy.NONE);
+				Runnable caller = () -> {
+					try {
+						callService.call();
+					} catch (Exception e) {
+						e.printStackTrace();
+					} finally {
+						done.countDown();
+					}
+				};
+				callers.add(execution == Execution.VIRTUAL ? Thread.ofVirtual().start(caller)
+						: Thread.ofPlatform().start(caller));
+			}
+			Thread.sleep(SETTLE_MILLIS);
+			System.gc();
+			int liveThreads = threads.getThreadCount();
+			long heapUsed = memory.getHeapMemoryUsage().getUsed();
+			done.await(CALL_TIMEOUT_SECONDS + 10, TimeUnit.SECONDS);
+			for (Thread thread : callers) {
+				thread.join();
+			}
+			System.out.printf("%-9s %6d %16d %12.1f%n", execution, calls, liveThreads, heapUsed / (1024.0 * 1024));
+		}
+	}
+
+	private static final class BlackHole implements AutoCloseable {
+
+		private final DatagramSocket socket;
+		private final Thread thread;
+
+		BlackHole() throws Exception {
+			socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+			thread = new Thread(this::drain, "black-hole");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int port() {
+			return socket.getLocalPort();
+		}
+
+		private void drain() {
+			byte[] buf = new byte[65536];
+			while (!socket.isClosed()) {
+				try {
+					socket.receive(new DatagramPacket(buf, buf.length));
+				} catch (Exception e) {
+					// closed
+				}
+			}
+		}
+
+		@Override
+		public void close() throws Exception {
+			socket.close();
+			thread.join(5000);
+		}
+
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.header.RequestLine;
+import org.mjsip.sip.header.SipHeaders;
+import org.mjsip.sip.header.StatusLine;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+
+class DigestAuthCacheTest {
+
+	private static final String CHALLENGE = "Digest realm=\"fritz.box\", nonce=\"4C2A1D3B\", qop=\"auth,auth-int\", "
+			+ "opaque=\"x,y\", algorithm=MD5";
+
+	private static final SipTarget SERVER = new SipTarget("fritz.box", 5060);
+
+	private final DigestAuthCache cache = new DigestAuthCache();
+
+	@Test
+	void computesTheRequestDigestOfRfc2617() {
+		String ha1 = DigestAuthCache.md5("Mufasa:testrealm@host.com:Circle Of Life");
+		assertThat(DigestAuthCache.response(ha1, "GET", "/dir/index.html", "dcd98b7102dd2f0e8b11d0f600bfb0c093",
+				"00000001", "0a4f113b", "auth")).isEqualTo("6629fae49393a05397450978507c4ef1");
+	}
+
+	@Test
+	void parsesQuotedValuesContainingCommas() {
+		assertThat(DigestAuthCache.parse(CHALLENGE)).containsExactlyInAnyOrderEntriesOf(Map.of( //
+				"realm", "fritz.box", //
+				"nonce", "4C2A1D3B", //
+				"qop", "auth,auth-int", //
+				"opaque", "x,y", //
+				"algorithm", "MD5"));
+	}
+
+	@Test
+	void noAuthorizationWithoutChallenge() {
+		SipMessage invite = invite();
+		cache.authorize("user", SERVER, invite);
+		assertThat(invite.getHeader(SipHeaders.Authorization)).isNull();
+	}
+
+	@Test
+	void authorizesWithIncreasingNonceCountOnceChallenged() {
+		cache.challenged("user", SERVER, "secret", challenge(401, SipHeaders.WWW_Authenticate));
+
+		Map<String, String> first = authorization(SipHeaders.Authorization);
+		Map<String, String> second = authorization(SipHeaders.Authorization);
+
+		assertThat(first).containsEntry("username", "user").containsEntry("realm", "fritz.box")
+				.containsEntry("nonce", "4C2A1D3B").containsEntry("qop", "auth").containsEntry("opaque", "x,y")
+				.containsEntry("nc", "00000001");
+		assertThat(second).containsEntry("nc", "00000002");
+		String ha1 = DigestAuthCache.md5("user:fritz.box:secret");
+		assertThat(first.get("response")).isEqualTo(DigestAuthCache.response(ha1, SipMethods.INVITE,
+				first.get("uri"), "4C2A1D3B", "00000001", first.get("cnonce"), "auth"));
+	}
+
+	@Test
+	void proxyChallengeIsAnsweredWithProxyAuthorization() {
+		cache.challenged("user", SERVER, "secret", challenge(407, SipHeaders.Proxy_Authenticate));
+		assertThat(authorization(SipHeaders.Proxy_Authorization)).containsEntry("nonce", "4C2A1D3B");
+	}
+
+	@Test
+	void takesOverTheNonceCountOfRequestsAuthorizedByMjSip() {
+		cache.challenged("user", SERVER, "secret", challenge(401, SipHeaders.WWW_Authenticate));
+		SipMessage reInvite = invite();
+		Header mjSipAuthorization = new Header(SipHeaders.Authorization,
+				"Digest username=\"user\", nonce=\"4C2A1D3B\", nc=00000005, qop=auth");
+		reInvite.setHeader(mjSipAuthorization);
+
+		cache.authorize("user", SERVER, reInvite);
+
+		assertThat(reInvite.getHeader(SipHeaders.Authorization).getValue()).isEqualTo(mjSipAuthorization.getValue());
+		assertThat(authorization(SipHeaders.Authorization)).containsEntry("nc", "00000006");
+	}
+
+	@Test
+	void challengesAreCachedPerAccountAndServer() {
+		cache.challenged("user", SERVER, "secret", challenge(401, SipHeaders.WWW_Authenticate));
+
+		assertThat(cache.isCached("user", SERVER)).isTrue();
+		assertThat(cache.isCached("other", SERVER)).isFalse();
+		assertThat(cache.isCached("user", new SipTarget("fritz.box", 5061))).isFalse();
+		SipMessage toOtherServer = invite();
+		cache.authorize("user", new SipTarget("10.0.0.2", 5060), toOtherServer);
+		assertThat(toOtherServer.getHeader(SipHeaders.Authorization)).isNull();
+	}
+
+	@Test
+	void unsupportedAlgorithmIsNotCached() {
+		SipMessage challenge = response(401);
+		challenge.setHeader(new Header(SipHeaders.WWW_Authenticate,
+				"Digest realm=\"fritz.box\", nonce=\"4C2A1D3B\", algorithm=SHA-256"));
+		cache.challenged("user", SERVER, "secret", challenge);
+		assertThat(cache.isCached("user", SERVER)).isFalse();
+	}
+
+	private Map<String, String> authorization(String headerName) {
+		SipMessage invite = invite();
+		cache.authorize("user", SERVER, invite);
+		return DigestAuthCache.parse(invite.getHeader(headerName).getValue());
+	}
+
+	private static SipMessage challenge(int code, String headerName) {
+		SipMessage challenge = response(code);
+		challenge.setHeader(new Header(headerName, CHALLENGE));
+		return challenge;
+	}
+
+	private static SipMessage response(int code) {
+		SipMessage msg = new SipMessage();
+		msg.setStatusLine(new StatusLine(code, "reason"));
+		return msg;
+	}
+
+	private static SipMessage invite() {
+		SipMessage msg = new SipMessage();
+		msg.setRequestLine(new RequestLine(SipMethods.INVITE, new SipURI("bob", "fritz.box")));
+		return msg;
+	}
+
+}
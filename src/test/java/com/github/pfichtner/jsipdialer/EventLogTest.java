@@ -0,0 +1,89 @@
+package com.github.pfichtner.jsipdialer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.pfichtner.jsipdialer.EventLog.Level;
+
+class EventLogTest {
+
+	private final PrintStream stderr = System.err;
+
+	@AfterEach
+	void tearDown() {
+		System.setErr(stderr);
+		EventLog.setLevel(Level.INFO);
+	}
+
+	@Test
+	void onlyLevelsAtOrAboveTheThresholdAreEnabled() {
+		EventLog.setLevel(Level.INFO);
+		assertThat(EventLog.isEnabled(Level.DEBUG)).isFalse();
+		assertThat(EventLog.isEnabled(Level.INFO)).isTrue();
+		assertThat(EventLog.isEnabled(Level.WARN)).isTrue();
+
+		EventLog.setLevel(Level.OFF);
+		assertThat(EventLog.isEnabled(Level.WARN)).isFalse();
+	}
+
+	@Test
+	void messagesOfDisabledLevelsAreNeverBuilt() {
+		AtomicBoolean built = new AtomicBoolean();
+		EventLog.setLevel(Level.WARN);
+
+		EventLog.debug(() -> {
+			built.set(true);
+			return "debug";
+		});
+		EventLog.info(() -> {
+			built.set(true);
+			return "info";
+		});
+
+		assertThat(built).isFalse();
+	}
+
+	@Test
+	void countsMessagesDroppedWhileTheQueueIsFull() throws Exception {
+		// WARN keeps messages of other components out of the queue
+		EventLog.setLevel(Level.WARN);
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch blocked = new CountDownLatch(1);
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(new OutputStream() {
+			@Override
+			public synchronized void write(int b) throws IOException {
+				writing.countDown();
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				written.write(b);
+			}
+		}, true, UTF_8));
+
+		// the writer takes this one and blocks on stderr, the queue is empty again
+		EventLog.warn(() -> "first");
+		assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+		for (int i = 0; i < EventLog.CAPACITY + 5; i++) {
+			EventLog.warn(() -> "queued");
+		}
+		blocked.countDown();
+		EventLog.flush(5, TimeUnit.SECONDS);
+
+		assertThat(written.toString(UTF_8)).contains("first", "LOG: dropped 5 messages");
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.pfichtner.jsipdialer.CallResult.DecidedBy;
+
+class HttpControlTest {
+
+	private final HttpClient client = HttpClient.newHttpClient();
+	private final CompletableFuture<CallResult> ringing = new CompletableFuture<>();
+	private HttpControl httpControl;
+
+	@AfterEach
+	void tearDown() {
+		ringing.complete(null);
+		if (httpControl != null) {
+			httpControl.close();
+		}
+	}
+
+	@Test
+	void acceptedCallReportsItsResult() throws Exception {
+		httpControl = new HttpControl(0, 10, 1, null, 5, (destinationNumber, callerName, timeout) -> call(
+				CompletableFuture.completedFuture(result(true, 200, "OK"))));
+
+		HttpResponse<String> submitted = post("destinationNumber=**9");
+
+		assertThat(submitted.statusCode()).isEqualTo(202);
+		String location = submitted.headers().firstValue("Location").orElseThrow();
+		await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(get(location).body())
+				.contains("\"state\":\"done\"", "\"success\":true", "\"statusCode\":200", "\"reason\":\"OK\""));
+	}
+
+	@Test
+	void rejectsRequestsWhenTheQueueIsFull() throws Exception {
+		httpControl = new HttpControl(0, 1, 1, null, 5,
+				(destinationNumber, callerName, timeout) -> call(ringing));
+
+		assertThat(post("destinationNumber=1").statusCode()).isEqualTo(202);
+		// wait until the first call rings, so the second one is queued
+		await().atMost(5, TimeUnit.SECONDS)
+				.untilAsserted(() -> assertThat(get("/calls/1").body()).contains("\"state\":\"ringing\""));
+		assertThat(post("destinationNumber=2").statusCode()).isEqualTo(202);
+		assertThat(post("destinationNumber=3").statusCode()).isEqualTo(429);
+	}
+
+	@Test
+	void shedsRequestsWhileTheServerAsksToRetryLater() throws Exception {
+		CallResult overloaded = new CallResult(false, 503, "503 Service Unavailable", DecidedBy.DIALOG_LISTENER,
+				false, 0, 0, 0, 0, 0, 0, 120);
+		httpControl = new HttpControl(0, 10, 1, null, 5,
+				(destinationNumber, callerName, timeout) -> call(CompletableFuture.completedFuture(overloaded)));
+
+		assertThat(post("destinationNumber=1").statusCode()).isEqualTo(202);
+		await().atMost(5, TimeUnit.SECONDS)
+				.untilAsserted(() -> assertThat(get("/calls/1").body()).contains("\"state\":\"done\""));
+
+		HttpResponse<String> shed = post("destinationNumber=2");
+		assertThat(shed.statusCode()).isEqualTo(503);
+		assertThat(shed.headers().firstValue("Retry-After").map(Integer::parseInt)).hasValueSatisfying(
+				seconds -> assertThat(seconds).isBetween(1, 120));
+	}
+
+	@Test
+	void rejectsInvalidRequests() throws Exception {
+		httpControl = new HttpControl(0, 10, 1, null, 5, (destinationNumber, callerName, timeout) -> call(ringing));
+
+		assertThat(post("callerName=x").statusCode()).isEqualTo(400);
+		assertThat(post("destinationNumber=1%0d%0aVia:%20x").statusCode()).isEqualTo(400);
+		assertThat(post("destinationNumber=%zz").statusCode()).isEqualTo(400);
+		assertThat(post("destinationNumber=1%").statusCode()).isEqualTo(400);
+		assertThat(get("/calls/42").statusCode()).isEqualTo(404);
+	}
+
+	@Test
+	void refusesRequestsFromWebPages() throws Exception {
+		httpControl = new HttpControl(0, 10, 1, null, 5, (destinationNumber, callerName, timeout) -> call(ringing));
+
+		HttpResponse<String> crossSite = client.send(HttpRequest.newBuilder(uri("/calls"))
+				.header("Content-Type", "application/x-www-form-urlencoded").header("Origin", "https://example.com")
+				.POST(BodyPublishers.ofString("destinationNumber=1")).build(), BodyHandlers.ofString());
+		HttpResponse<String> inQuery = client.send(
+				HttpRequest.newBuilder(uri("/calls?destinationNumber=1")).POST(BodyPublishers.noBody()).build(),
+				BodyHandlers.ofString());
+
+		assertThat(crossSite.statusCode()).isEqualTo(403);
+		assertThat(inQuery.statusCode()).isEqualTo(400);
+		assertThat(get("/calls/1").statusCode()).isEqualTo(404);
+	}
+
+	@Test
+	void rejectsTooLargeRequests() throws Exception {
+		httpControl = new HttpControl(0, 10, 1, null, 5, (destinationNumber, callerName, timeout) -> call(ringing));
+
+		assertThat(post("destinationNumber=1&callerName=" + "x".repeat(HttpControl.MAX_REQUEST_BYTES)).statusCode())
+				.isEqualTo(413);
+	}
+
+	@Test
+	void servesMetrics() throws Exception {
+		httpControl = new HttpControl(0, 10, 1, null, 5, (destinationNumber, callerName, timeout) -> call(ringing));
+
+		HttpResponse<String> metrics = get("/metrics");
+
+		assertThat(metrics.statusCode()).isEqualTo(200);
+		assertThat(metrics.headers().firstValue("Content-Type")).hasValue(CallMetrics.CONTENT_TYPE);
+		assertThat(metrics.body()).contains("# TYPE jsipdialer_time_to_answer_seconds histogram");
+	}
+
+	private HttpResponse<String> post(String form) throws Exception {
+		return client.send(HttpRequest.newBuilder(uri("/calls"))
+				.header("Content-Type", "application/x-www-form-urlencoded").POST(BodyPublishers.ofString(form))
+				.build(), BodyHandlers.ofString());
+	}
+
+	private HttpResponse<String> get(String path) throws Exception {
+		return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), BodyHandlers.ofString());
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://127.0.0.1:" + httpControl.port() + path);
+	}
+
+	private static CallService call(CompletableFuture<CallResult> result) {
+		return new CallService(null, 0, null, null, null, null, 0, null) {
+			@Override
+			public CompletableFuture<CallResult> callAsync() {
+				return result;
+			}
+		};
+	}
+
+	private static CallResult result(boolean success, int statusCode, String reason) {
+		return new CallResult(success, statusCode, reason, DecidedBy.DIALOG_LISTENER, false, 0, 0, 0, 0, 0, 0, 0);
+	}
+
+}
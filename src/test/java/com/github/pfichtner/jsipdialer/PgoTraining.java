@@ -0,0 +1,77 @@
+package com.github.pfichtner.jsipdialer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the profiles for the profile-guided optimized native image: runs
+ * the image built with {@code --pgo-instrument} against
+ * {@link SimulatedCallees} once the way an alert calls it (one call per
+ * process) and once in daemon mode with every {@link CalleeBehavior}, each
+ * run dumping its profile into the given directory. Run by the {@code pgo}
+ * profile of the build, see INSTALL.md.
+ *
+ * <pre>
+ * PgoTraining &lt;instrumented binary&gt; &lt;profile directory&gt;
+ * </pre>
+ */
+public class PgoTraining {
+
+	private static final long RUN_TIMEOUT_SECONDS = 60;
+
+	public static void main(String... args) throws Exception {
+		Path binary = Path.of(args[0]);
+		Path profiles = Files.createDirectories(Path.of(args[1]));
+		try (SimulatedCallees callees = new SimulatedCallees(Map.of(CalleeBehavior.ACCEPT, 1),
+				Duration.ofMillis(20), Duration.ofMillis(200))) {
+			run(binary, profiles.resolve("oneshot.iprof"), callees, null, //
+					"-destinationNumber", "ringing_then_accept");
+			StringBuilder destinations = new StringBuilder();
+			for (CalleeBehavior behavior : CalleeBehavior.values()) {
+				destinations.append(behavior.name().toLowerCase()).append("1\n");
+			}
+			run(binary, profiles.resolve("daemon.iprof"), callees, destinations.toString(), //
+					"-daemon", "-timeout", "1");
+		}
+	}
+
+	private static void run(Path binary, Path profile, SimulatedCallees callees, String stdin, String... args)
+			throws Exception {
+		List<String> command = new ArrayList<>(List.of(binary.toAbsolutePath().toString(), //
+				"-sipServerAddress", "127.0.0.1", //
+				"-sipServerPort", String.valueOf(callees.port()), //
+				"-localPort", "0", //
+				"-XX:ProfilesDumpFile=" + profile.toAbsolutePath()));
+		command.addAll(List.of(args));
+		ProcessBuilder processBuilder = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.INHERIT)
+				.redirectError(ProcessBuilder.Redirect.INHERIT);
+		processBuilder.environment().put(SipClientMain.ENVVAR_SIP_USERNAME, "pgo");
+		processBuilder.environment().put(SipClientMain.ENVVAR_SIP_PASSWORD, "pgo");
+		Files.deleteIfExists(profile);
+
+		Process process = processBuilder.start();
+		try (OutputStream in = process.getOutputStream()) {
+			if (stdin != null) {
+				in.write(stdin.getBytes(UTF_8));
+			}
+		}
+		if (!process.waitFor(RUN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			process.destroyForcibly();
+			throw new IllegalStateException(command + " did not finish within " + RUN_TIMEOUT_SECONDS + "s");
+		}
+		// the exit code is not checked, refused calls are part of the training
+		if (!Files.isRegularFile(profile)) {
+			throw new IllegalStateException(
+					binary + " wrote no profile to " + profile + ", was it built with --pgo-instrument?");
+		}
+	}
+
+}
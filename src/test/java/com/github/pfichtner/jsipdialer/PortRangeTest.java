@@ -0,0 +1,85 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.BindException;
+import java.net.DatagramSocket;
+import java.net.ServerSocket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class PortRangeTest {
+
+	@Test
+	void parsesSinglePort() {
+		assertThat(PortRange.parse("15062")).isEqualTo(PortRange.of(15062));
+	}
+
+	@Test
+	void parsesRange() {
+		assertThat(PortRange.parse("20000-20100")).isEqualTo(new PortRange(20000, 20100));
+	}
+
+	@Test
+	void parsesEphemeral() {
+		assertThat(PortRange.parse("0")).isEqualTo(PortRange.EPHEMERAL);
+	}
+
+	@Test
+	void rejectsInvalidValues() {
+		assertThatThrownBy(() -> PortRange.parse("abc")).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> PortRange.parse("20100-20000")).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> PortRange.parse("0-100")).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> PortRange.parse("65536")).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void singlePortInUseFails() throws Exception {
+		try (DatagramSocket occupied = new DatagramSocket(0)) {
+			int port = occupied.getLocalPort();
+			assertThatThrownBy(() -> PortRange.of(port).bind("udp", DatagramSocket::new))
+					.isInstanceOf(BindException.class);
+		}
+	}
+
+	@Test
+	void ephemeralBindsAFreePort() throws Exception {
+		try (DatagramSocket udp = PortRange.EPHEMERAL.bind("udp", DatagramSocket::new);
+				ServerSocket tcp = PortRange.EPHEMERAL.bind("tcp", ServerSocket::new)) {
+			assertThat(udp.getLocalPort()).isPositive();
+			assertThat(tcp.getLocalPort()).isPositive();
+		}
+	}
+
+	@Test
+	void ephemeralRetriesIfAPortIsTakenMeanwhile() throws Exception {
+		AtomicInteger attempts = new AtomicInteger();
+		assertThat(PortRange.EPHEMERAL.bind("udp", port -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw new BindException("taken");
+			}
+			return port;
+		})).isPositive();
+		assertThat(attempts).hasValue(3);
+	}
+
+	@Test
+	void rangeSkipsPortsInUse() throws Exception {
+		try (DatagramSocket occupied = new DatagramSocket(0)) {
+			int port = occupied.getLocalPort();
+			try (DatagramSocket bound = new PortRange(port, port + 1).bind("udp", DatagramSocket::new)) {
+				assertThat(bound.getLocalPort()).isEqualTo(port + 1);
+			}
+		}
+	}
+
+	@Test
+	void exhaustedRangeIsReported() {
+		assertThatThrownBy(() -> new PortRange(20000, 20100).bind("udp", port -> {
+			throw new BindException("taken");
+		})).isInstanceOf(BindException.class).hasMessage("No free udp port in range 20000-20100");
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.github.pfichtner.jsipdialer;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ProxyPoolTest {
+
+	private static final SipTarget PBX1 = new SipTarget("10.0.0.1", 5060);
+	private static final SipTarget PBX2 = new SipTarget("10.0.0.2", 5060);
+
+	// never started, so it sends nothing
+	private final ProxyPool pool = new ProxyPool(null, () -> List.of(PBX1, PBX2), "udp", "127.0.0.1", 5060, 1000);
+
+	@Test
+	void keepsTheResolvedOrderWhileNoCallIsPlaced() {
+		assertThat(pool.order(List.of(PBX1, PBX2))).containsExactly(PBX1, PBX2);
+	}
+
+	@Test
+	void placesCallsOnTheServerWithTheFewestCallsInProgress() {
+		CallState first = callOn(PBX1);
+		assertThat(pool.order(List.of(PBX1, PBX2))).containsExactly(PBX2, PBX1);
+
+		CallState second = callOn(PBX2);
+		callOn(PBX2);
+		assertThat(pool.order(List.of(PBX1, PBX2))).containsExactly(PBX1, PBX2);
+
+		pool.callEnded(second);
+		pool.callEnded(first);
+		assertThat(pool.health()).extracting(ProxyPool.Health::outstanding).containsOnly(0, 1);
+	}
+
+	@Test
+	void spreadsCallsPlacedOneAfterTheOther() {
+		pool.callEnded(callOn(PBX1));
+		assertThat(pool.order(List.of(PBX1, PBX2))).containsExactly(PBX2, PBX1);
+	}
+
+	@Test
+	void endingACallTwiceCountsOnce() {
+		CallState call = callOn(PBX1);
+		callOn(PBX1);
+		pool.callEnded(call);
+		pool.callEnded(call);
+		assertThat(pool.health()).singleElement().extracting(ProxyPool.Health::outstanding).isEqualTo(1);
+	}
+
+	@Test
+	void skipsAServerThatDoesNotAnswerTheProbes() throws Exception {
+		try (DatagramSocket blackHole = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+				SimulatedCallees callees = new SimulatedCallees(CalleeBehavior.ACCEPT);
+				SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options
+						.of("127.0.0.1:" + blackHole.getLocalPort() + ",127.0.0.1:" + callees.port(), 5060, "udp")
+						.withViaAddress("127.0.0.1").withProbeIntervalSeconds(1))) {
+			SipTarget dead = new SipTarget("127.0.0.1", blackHole.getLocalPort());
+			SipTarget live = new SipTarget("127.0.0.1", callees.port());
+
+			await().atMost(10, SECONDS).until(() -> endpoint.health().stream()
+					.anyMatch(health -> health.target().equals(dead) && !health.alive()));
+
+			assertThat(endpoint.targets()).containsExactly(live, dead);
+			assertThat(endpoint.health()).filteredOn(health -> health.target().equals(live)).singleElement()
+					.satisfies(health -> {
+						assertThat(health.alive()).isTrue();
+						assertThat(health.rtt()).isPresent();
+					});
+		}
+	}
+
+	@Test
+	void keepsServersAnsweringTheProbesUp() throws Exception {
+		try (SimulatedCallees first = new SimulatedCallees(CalleeBehavior.ACCEPT);
+				SimulatedCallees second = new SimulatedCallees(CalleeBehavior.ACCEPT);
+				SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options
+						.of("127.0.0.1:" + first.port() + ",127.0.0.1:" + second.port(), 5060, "udp")
+						.withViaAddress("127.0.0.1").withProbeIntervalSeconds(1))) {
+			await().atMost(10, SECONDS).until(() -> endpoint.health().size() == 2
+					&& endpoint.health().stream().allMatch(health -> health.rtt().isPresent()));
+
+			// long enough for more than DOWN_AFTER_UNANSWERED probes per server
+			await().during(ProxyPool.DOWN_AFTER_UNANSWERED + 1, SECONDS).atMost(10, SECONDS)
+					.until(() -> endpoint.health().stream().allMatch(ProxyPool.Health::alive));
+		}
+	}
+
+	private CallState callOn(SipTarget target) {
+		CallState state = new CallState("user", "pass", SuccessCriterion.ANSWERED);
+		state.routeTo(target);
+		pool.callStarted(state);
+		return state;
+	}
+
+}
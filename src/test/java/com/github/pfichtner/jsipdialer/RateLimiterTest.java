@@ -0,0 +1,38 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+	@Test
+	void spacesPermitsEvenly() throws Exception {
+		RateLimiter rateLimiter = new RateLimiter(20);
+		long start = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			rateLimiter.acquire();
+		}
+		// the first permit is immediate, the other four are 50 ms apart
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(190);
+	}
+
+	@Test
+	void handsOutABurstRightAway() {
+		RateLimiter rateLimiter = new RateLimiter(1, 3);
+		assertThat(rateLimiter.tryAcquire()).isZero();
+		assertThat(rateLimiter.tryAcquire()).isZero();
+		assertThat(rateLimiter.tryAcquire()).isZero();
+		assertThat(rateLimiter.tryAcquire()).isPositive().isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1));
+	}
+
+	@Test
+	void rejectsNonPositiveRates() {
+		assertThatThrownBy(() -> new RateLimiter(0)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new RateLimiter(1, 0)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.github.pfichtner.jsipdialer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pfichtner.jsipdialer.ResponseFilter.Verdict;
+
+class ResponseFilterTest {
+
+	private static final long LIFETIME = TimeUnit.SECONDS.toNanos(32);
+
+	private final AtomicLong now = new AtomicLong();
+	private final ResponseFilter filter = new ResponseFilter(now::get);
+
+	@Test
+	void acceptsResponsesToRequestsSent() {
+		filter.expect("z9hG4bK-1", "call-1@127.0.0.1", LIFETIME);
+		assertThat(check(response("Via", "z9hG4bK-1", "Call-ID", "call-1@127.0.0.1")))
+				.isEqualTo(Verdict.ACCEPTED);
+	}
+
+	@Test
+	void understandsCompactAndLowerCaseHeaderNames() {
+		filter.expect("z9hG4bK-1", "call-1", LIFETIME);
+		assertThat(check(response("v", "z9hG4bK-1", "i", "call-1"))).isEqualTo(Verdict.ACCEPTED);
+		assertThat(check(response("via", "z9hG4bK-1", "call-id", "call-1"))).isEqualTo(Verdict.ACCEPTED);
+	}
+
+	@Test
+	void dropsResponsesToRequestsNotSent() {
+		filter.expect("z9hG4bK-1", "call-1", LIFETIME);
+		assertThat(check(response("Via", "z9hG4bK-2", "Call-ID", "call-1"))).isEqualTo(Verdict.UNMATCHED);
+		assertThat(check(response("Via", "z9hG4bK-1", "Call-ID", "call-2"))).isEqualTo(Verdict.UNMATCHED);
+	}
+
+	@Test
+	void onlyTheTopViaCounts() {
+		filter.expect("z9hG4bK-1", "call-1", LIFETIME);
+		String response = "SIP/2.0 200 OK\r\n" //
+				+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK-forged, SIP/2.0/UDP 10.0.0.2;branch=z9hG4bK-1\r\n" //
+				+ "Via: SIP/2.0/UDP 10.0.0.3;branch=z9hG4bK-1\r\n" //
+				+ "Call-ID: call-1\r\n" //
+				+ "\r\n";
+		assertThat(check(response)).isEqualTo(Verdict.UNMATCHED);
+	}
+
+	@Test
+	void dropsResponsesWithoutBranchOrCallId() {
+		assertThat(check("SIP/2.0 200 OK\r\nVia: SIP/2.0/UDP 10.0.0.1\r\nCall-ID: call-1\r\n\r\n"))
+				.isEqualTo(Verdict.MALFORMED);
+		assertThat(check("SIP/2.0 200 OK\r\nVia: SIP/2.0/UDP 10.0.0.1;branch=z9hG4bK-1\r\n\r\n"))
+				.isEqualTo(Verdict.MALFORMED);
+		// headers in the body do not count
+		assertThat(check("SIP/2.0 200 OK\r\nVia: SIP/2.0/UDP 10.0.0.1;branch=z9hG4bK-1\r\n\r\n"
+				+ "Call-ID: call-1\r\n")).isEqualTo(Verdict.MALFORMED);
+	}
+
+	@Test
+	void letsRequestsThrough() {
+		assertThat(check("BYE sip:alice@127.0.0.1 SIP/2.0\r\nCall-ID: unknown\r\n\r\n"))
+				.isEqualTo(Verdict.ACCEPTED);
+	}
+
+	@Test
+	void forgetsTransactionsOnceTheyAreOver() {
+		filter.expect("z9hG4bK-1", "call-1", LIFETIME);
+		now.addAndGet(LIFETIME);
+		filter.expect("z9hG4bK-2", "call-2", LIFETIME);
+
+		assertThat(filter.outstanding()).isEqualTo(1);
+		assertThat(check(response("Via", "z9hG4bK-1", "Call-ID", "call-1"))).isEqualTo(Verdict.UNMATCHED);
+	}
+
+	@Test
+	void expectsResponsesToAnInviteUntilItExpires() {
+		filter.expect("z9hG4bK-1", "call-1", ResponseFilter.UNTIL_EXPIRED);
+		now.addAndGet(10 * LIFETIME);
+		filter.expect("z9hG4bK-2", "call-2", LIFETIME);
+		assertThat(check(response("Via", "z9hG4bK-1", "Call-ID", "call-1"))).isEqualTo(Verdict.ACCEPTED);
+
+		filter.expire("z9hG4bK-1", LIFETIME);
+		now.addAndGet(LIFETIME);
+		filter.expect("z9hG4bK-3", "call-3", LIFETIME);
+		assertThat(check(response("Via", "z9hG4bK-1", "Call-ID", "call-1"))).isEqualTo(Verdict.UNMATCHED);
+	}
+
+	@Test
+	void checksAlreadyParsedHeaders() {
+		filter.expect("z9hG4bK-1", "call-1", LIFETIME);
+		assertThat(filter.check("z9hG4bK-1", "call-1")).isEqualTo(Verdict.ACCEPTED);
+		assertThat(filter.check("z9hG4bK-2", "call-1")).isEqualTo(Verdict.UNMATCHED);
+		assertThat(filter.check(null, "call-1")).isEqualTo(Verdict.MALFORMED);
+	}
+
+	@Test
+	void checksOnlyTheGivenPartOfTheDatagram() {
+		filter.expect("z9hG4bK-1", "call-1", LIFETIME);
+		byte[] datagram = ("garbage" + response("Via", "z9hG4bK-1", "Call-ID", "call-1")).getBytes(UTF_8);
+		assertThat(filter.check(datagram, 7, datagram.length - 7)).isEqualTo(Verdict.ACCEPTED);
+	}
+
+	private Verdict check(String message) {
+		byte[] datagram = message.getBytes(UTF_8);
+		return filter.check(datagram, 0, datagram.length);
+	}
+
+	private static String response(String via, String branch, String callIdHeader, String callId) {
+		return "SIP/2.0 180 Ringing\r\n" //
+				+ via + ": SIP/2.0/UDP 127.0.0.1:15062 ; rport ; branch = " + branch + "\r\n" //
+				+ "From: <sip:alice@127.0.0.1>;tag=1\r\n" //
+				+ "To: <sip:bob@127.0.0.1>;tag=2\r\n" //
+				+ callIdHeader + ":  " + callId + "\r\n" //
+				+ "CSeq: 1 INVITE\r\n" //
+				+ "Content-Length: 0\r\n" //
+				+ "\r\n";
+	}
+
+}
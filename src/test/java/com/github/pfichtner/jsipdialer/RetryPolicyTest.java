@@ -0,0 +1,74 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pfichtner.jsipdialer.CallResult.DecidedBy;
+
+class RetryPolicyTest {
+
+	private final RetryPolicy policy = new RetryPolicy(Set.of(486, 503), 3, Duration.ofSeconds(1));
+
+	@Test
+	void parsesACommaSeparatedListOfStatusCodes() {
+		assertThat(RetryPolicy.parseCodes("408, 480,486,,503")).containsExactly(408, 480, 486, 503);
+	}
+
+	@Test
+	void rejectsWhatIsNotAFailureStatusCode() {
+		assertThatThrownBy(() -> RetryPolicy.parseCodes("busy")).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("'busy' is not a status code");
+		assertThatThrownBy(() -> RetryPolicy.parseCodes("486,200")).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("200 is not a failure status code (400-699)");
+	}
+
+	@Test
+	void retriesOnlyFailuresWithTheConfiguredCodes() {
+		assertThat(policy.isRetryable(result(false, 486, 0))).isTrue();
+		assertThat(policy.isRetryable(result(false, 603, 0))).isFalse();
+		assertThat(policy.isRetryable(result(true, 486, 0))).isFalse();
+		assertThat(RetryPolicy.NONE.isRetryable(result(false, 486, 0))).isFalse();
+	}
+
+	@Test
+	void doesNotRetryIfTheServerAsksToWaitTooLong() {
+		assertThat(policy.isRetryable(result(false, 503, 60))).isTrue();
+		assertThat(policy.isRetryable(result(false, 503, 61))).isFalse();
+	}
+
+	@Test
+	void backoffIsJitteredAndDoubledForEachRetry() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100; i++) {
+			assertThat(policy.backoff(1, result(false, 486, 0), random)).isBetween(Duration.ofMillis(500),
+					Duration.ofSeconds(1));
+			assertThat(policy.backoff(3, result(false, 486, 0), random)).isBetween(Duration.ofSeconds(2),
+					Duration.ofSeconds(4));
+			assertThat(policy.backoff(30, result(false, 486, 0), random)).isBetween(Duration.ofSeconds(30),
+					RetryPolicy.MAX_BACKOFF);
+		}
+	}
+
+	@Test
+	void backoffIsAtLeastTheRetryAfter() {
+		assertThat(policy.backoff(1, result(false, 503, 10), new Random(42))).isEqualTo(Duration.ofSeconds(10));
+	}
+
+	@Test
+	void onlyPoliciesWithCodesToRetryOnGuardCalls() {
+		assertThat(policy.guardsCalls()).isTrue();
+		assertThat(RetryPolicy.NONE.guardsCalls()).isFalse();
+	}
+
+	private static CallResult result(boolean success, int statusCode, int retryAfterSeconds) {
+		return new CallResult(success, statusCode, null, DecidedBy.DIALOG_LISTENER, false, 0, 0, 0, 0, 0, 0,
+				retryAfterSeconds);
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class RttEstimatorTest {
+
+	private final RttEstimator estimator = new RttEstimator();
+
+	@Test
+	void startsWithTheDefault() {
+		assertThat(estimator.t1Millis()).isEqualTo(500);
+	}
+
+	@Test
+	void firstSampleCountsWithHalfOfItAsVariation() {
+		assertThat(estimator.sample(millis(40))).isEqualTo(40 + 4 * 20);
+	}
+
+	@Test
+	void followsTheSmoothedRoundTripTime() {
+		estimator.sample(millis(100));
+		for (int i = 0; i < 100; i++) {
+			estimator.sample(millis(60));
+		}
+		assertThat(estimator.t1Millis()).isEqualTo(60);
+	}
+
+	@Test
+	void isClampedBetweenMinimumAndDefault() {
+		assertThat(estimator.sample(TimeUnit.MICROSECONDS.toNanos(300))).isEqualTo(RttEstimator.MIN_T1_MILLIS);
+		assertThat(new RttEstimator().sample(millis(2000))).isEqualTo(500);
+	}
+
+	private static long millis(long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+}
@@ -0,0 +1,374 @@
+package com.github.pfichtner.jsipdialer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A UDP user agent server standing in for any number of callees at once, so
+ * the dialer can be load tested without Kamailio and without registering a
+ * {@link RegisteredCallee} per destination. Send the dialer's INVITEs here
+ * (use {@link #port()} as the SIP server's port).
+ * <p>
+ * Each callee (the user part of the request-URI) behaves like one of the
+ * {@link CalleeBehavior}s: a callee whose name starts with a behavior's name,
+ * e.g. {@code refuse-17} or {@code ringing_then_accept3}, behaves like that one,
+ * all others are spread over the configured mix by their name's hash, so the
+ * same callee always behaves the same. Every INVITE is answered with
+ * {@code 100 Trying} right away, the behavior's first response follows after
+ * the answer delay and its second one (the accept after ringing, the decline
+ * after 183, ...) after the ring duration. CANCELs are answered with
+ * {@code 200} and {@code 487}, BYEs with {@code 200}.
+ * <p>
+ * Messages are read and written as plain text, mjSIP is not involved, so the
+ * callees cost next to nothing compared to the dialer under test.
+ */
+final class SimulatedCallees implements AutoCloseable {
+
+	private static final Duration FINISHED_CALL_RETENTION = Duration.ofSeconds(32);
+
+	private final DatagramSocket socket;
+	private final Map<CalleeBehavior, Integer> mix;
+	private final int totalWeight;
+	private final long answerDelayMillis;
+	private final long ringDurationMillis;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "simulated-callees-responder");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Thread receiver;
+	private final AtomicBoolean running = new AtomicBoolean(true);
+	private final AtomicLong tags = new AtomicLong();
+	private final Map<String, Dialog> dialogs = new ConcurrentHashMap<>();
+	private final LongAdder invites = new LongAdder();
+	private final LongAdder cancels = new LongAdder();
+	private final LongAdder byes = new LongAdder();
+	private volatile long lastInviteAt;
+
+	private static final class Dialog {
+		final SocketAddress peer;
+		final Map<String, List<String>> invite;
+		final String toTag;
+		final List<ScheduledFuture<?>> pending = new ArrayList<>();
+		int finalCode;
+
+		Dialog(SocketAddress peer, Map<String, List<String>> invite, String toTag) {
+			this.peer = peer;
+			this.invite = invite;
+			this.toTag = toTag;
+		}
+	}
+
+	/**
+	 * @param mix          the behaviors of callees not named after one and their
+	 *                     relative weights
+	 * @param answerDelay  time between the INVITE and the behavior's first
+	 *                     response
+	 * @param ringDuration time between the behavior's first and second response
+	 */
+	SimulatedCallees(Map<CalleeBehavior, Integer> mix, Duration answerDelay, Duration ringDuration)
+			throws Exception {
+		if (mix.isEmpty() || mix.values().stream().anyMatch(weight -> weight < 0)
+				|| mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+			throw new IllegalArgumentException("mix needs at least one behavior with a positive weight: " + mix);
+		}
+		this.mix = new EnumMap<>(mix);
+		this.totalWeight = this.mix.values().stream().mapToInt(Integer::intValue).sum();
+		this.answerDelayMillis = answerDelay.toMillis();
+		this.ringDurationMillis = ringDuration.toMillis();
+		this.socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+		this.receiver = new Thread(this::receive, "simulated-callees");
+		this.receiver.setDaemon(true);
+		this.receiver.start();
+	}
+
+	SimulatedCallees(CalleeBehavior behavior) throws Exception {
+		this(Map.of(behavior, 1), Duration.ZERO, Duration.ofMillis(100));
+	}
+
+	int port() {
+		return socket.getLocalPort();
+	}
+
+	long invitesReceived() {
+		return invites.sum();
+	}
+
+	long cancelsReceived() {
+		return cancels.sum();
+	}
+
+	long byesReceived() {
+		return byes.sum();
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} the last new INVITE (not a
+	 *         retransmission) arrived at, only meaningful if
+	 *         {@link #invitesReceived()} is not zero
+	 */
+	long lastInviteAt() {
+		return lastInviteAt;
+	}
+
+	CalleeBehavior behaviorOf(String callee) {
+		String name = callee.toUpperCase(Locale.ROOT);
+		// longest match, ACCEPT is a prefix of ACCEPT_THEN_BYE
+		return Arrays.stream(CalleeBehavior.values()).filter(behavior -> name.startsWith(behavior.name()))
+				.max(Comparator.comparingInt(behavior -> behavior.name().length()))
+				.orElseGet(() -> weighted(Math.floorMod(callee.hashCode(), totalWeight)));
+	}
+
+	private CalleeBehavior weighted(int slot) {
+		for (Map.Entry<CalleeBehavior, Integer> entry : mix.entrySet()) {
+			slot -= entry.getValue();
+			if (slot < 0) {
+				return entry.getKey();
+			}
+		}
+		throw new IllegalStateException("slot outside of the mix's total weight");
+	}
+
+	private void receive() {
+		byte[] buf = new byte[65536];
+		while (running.get()) {
+			try {
+				DatagramPacket packet = new DatagramPacket(buf, buf.length);
+				socket.receive(packet);
+				handle(new String(packet.getData(), 0, packet.getLength(), UTF_8), packet.getSocketAddress());
+			} catch (Exception e) {
+				if (running.get()) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void handle(String message, SocketAddress peer) throws Exception {
+		if (message.isBlank() || message.startsWith("SIP/2.0")) {
+			// keep-alive or a response (to our BYE)
+			return;
+		}
+		String requestLine = message.substring(0, message.indexOf('\r'));
+		String method = requestLine.substring(0, requestLine.indexOf(' '));
+		Map<String, List<String>> headers = headers(message);
+		String callId = first(headers, "call-id");
+		switch (method) {
+		case "INVITE" -> {
+			Dialog existing = dialogs.get(callId);
+			if (existing != null) {
+				// retransmission
+				send(respond(headers, 100, "Trying", null), peer);
+				return;
+			}
+			lastInviteAt = System.nanoTime();
+			invites.increment();
+			Dialog dialog = new Dialog(peer, headers, "sim" + tags.incrementAndGet());
+			dialogs.put(callId, dialog);
+			send(respond(headers, 100, "Trying", null), peer);
+			play(callId, dialog, behaviorOf(user(requestLine.split(" ")[1])));
+		}
+		case "CANCEL" -> {
+			cancels.increment();
+			send(respond(headers, 200, "OK", null), peer);
+			Dialog dialog = dialogs.get(callId);
+			if (dialog != null) {
+				synchronized (dialog) {
+					dialog.pending.forEach(future -> future.cancel(false));
+				}
+				finish(callId, dialog, 487, "Request Terminated");
+			}
+		}
+		case "BYE" -> {
+			byes.increment();
+			send(respond(headers, 200, "OK", null), peer);
+		}
+		case "ACK" -> {
+			// nothing to do, final responses are not retransmitted
+		}
+		default -> send(respond(headers, 200, "OK", null), peer);
+		}
+	}
+
+	private void play(String callId, Dialog dialog, CalleeBehavior behavior) {
+		switch (behavior) {
+		case ACCEPT -> later(dialog, answerDelayMillis, () -> finish(callId, dialog, 200, "OK"));
+		case ACCEPT_THEN_BYE -> {
+			later(dialog, answerDelayMillis, () -> finish(callId, dialog, 200, "OK"));
+			// not cancellable like the responses, sendBye checks whether the call was accepted
+			scheduler.schedule(() -> sendBye(dialog), answerDelayMillis + ringDurationMillis, TimeUnit.MILLISECONDS);
+		}
+		case REFUSE -> later(dialog, answerDelayMillis, () -> finish(callId, dialog, 403, "Forbidden"));
+		case IGNORE -> {
+			// rings until the dialer gives up and cancels
+		}
+		case PROVISIONAL_183 -> later(dialog, answerDelayMillis, () -> provisional(dialog, 183, "Session Progress"));
+		case PROVISIONAL_183_THEN_REFUSE -> {
+			later(dialog, answerDelayMillis, () -> provisional(dialog, 183, "Session Progress"));
+			later(dialog, answerDelayMillis + ringDurationMillis, () -> finish(callId, dialog, 403, "Forbidden"));
+		}
+		case RINGING_THEN_ACCEPT -> {
+			later(dialog, answerDelayMillis, () -> provisional(dialog, 180, "Ringing"));
+			later(dialog, answerDelayMillis + ringDurationMillis, () -> finish(callId, dialog, 200, "OK"));
+		}
+		case RINGING_THEN_DECLINE -> {
+			later(dialog, answerDelayMillis, () -> provisional(dialog, 180, "Ringing"));
+			later(dialog, answerDelayMillis + ringDurationMillis, () -> finish(callId, dialog, 603, "Decline"));
+		}
+		}
+	}
+
+	private void later(Dialog dialog, long delayMillis, Runnable response) {
+		synchronized (dialog) {
+			if (dialog.finalCode == 0) {
+				dialog.pending.add(scheduler.schedule(response, delayMillis, TimeUnit.MILLISECONDS));
+			}
+		}
+	}
+
+	private void provisional(Dialog dialog, int code, String reason) {
+		synchronized (dialog) {
+			if (dialog.finalCode == 0) {
+				send(respond(dialog.invite, code, reason, dialog.toTag), dialog.peer);
+			}
+		}
+	}
+
+	private void finish(String callId, Dialog dialog, int code, String reason) {
+		synchronized (dialog) {
+			if (dialog.finalCode != 0) {
+				return;
+			}
+			dialog.finalCode = code;
+			send(respond(dialog.invite, code, reason, dialog.toTag), dialog.peer);
+		}
+		// keep it a while to recognize late retransmissions of the INVITE
+		scheduler.schedule(() -> dialogs.remove(callId, dialog), FINISHED_CALL_RETENTION.toMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	private void sendBye(Dialog dialog) {
+		synchronized (dialog) {
+			if (dialog.finalCode != 200) {
+				return;
+			}
+		}
+		String contact = first(dialog.invite, "contact");
+		String target = contact.substring(contact.indexOf('<') + 1, contact.indexOf('>'));
+		String bye = "BYE " + target + " SIP/2.0\r\n" //
+				+ "Via: SIP/2.0/UDP 127.0.0.1:" + port() + ";branch=z9hG4bK" + dialog.toTag + "bye\r\n" //
+				+ "Max-Forwards: 70\r\n" //
+				+ "From: " + first(dialog.invite, "to") + ";tag=" + dialog.toTag + "\r\n" //
+				+ "To: " + first(dialog.invite, "from") + "\r\n" //
+				+ "Call-ID: " + first(dialog.invite, "call-id") + "\r\n" //
+				+ "CSeq: 1 BYE\r\n" //
+				+ "Content-Length: 0\r\n\r\n";
+		send(bye, dialog.peer);
+	}
+
+	private String respond(Map<String, List<String>> request, int code, String reason, String toTag) {
+		StringBuilder response = new StringBuilder("SIP/2.0 ").append(code).append(' ').append(reason)
+				.append("\r\n");
+		for (String via : request.getOrDefault("via", List.of())) {
+			response.append("Via: ").append(via).append("\r\n");
+		}
+		String to = first(request, "to");
+		response.append("From: ").append(first(request, "from")).append("\r\n") //
+				.append("To: ").append(to);
+		if (toTag != null && !to.contains(";tag=")) {
+			response.append(";tag=").append(toTag);
+		}
+		response.append("\r\n") //
+				.append("Call-ID: ").append(first(request, "call-id")).append("\r\n") //
+				.append("CSeq: ").append(first(request, "cseq")).append("\r\n");
+		if (code == 200 && first(request, "cseq").endsWith("INVITE")) {
+			response.append("Contact: <sip:callee@127.0.0.1:").append(port()).append(">\r\n");
+		}
+		return response.append("Content-Length: 0\r\n\r\n").toString();
+	}
+
+	private void send(String message, SocketAddress peer) {
+		byte[] data = message.getBytes(UTF_8);
+		try {
+			socket.send(new DatagramPacket(data, data.length, peer));
+		} catch (Exception e) {
+			if (running.get()) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static Map<String, List<String>> headers(String message) {
+		Map<String, List<String>> headers = new ConcurrentHashMap<>();
+		int end = message.indexOf("\r\n\r\n");
+		String[] lines = message.substring(0, end < 0 ? message.length() : end).split("\r\n");
+		for (int i = 1; i < lines.length; i++) {
+			int colon = lines[i].indexOf(':');
+			if (colon > 0) {
+				String name = canonical(lines[i].substring(0, colon).strip().toLowerCase(Locale.ROOT));
+				String value = lines[i].substring(colon + 1).strip();
+				List<String> values = headers.computeIfAbsent(name, n -> new ArrayList<>());
+				if (name.equals("via")) {
+					// Via: a, b is the same as two Via headers
+					for (String via : value.split(",")) {
+						values.add(via.strip());
+					}
+				} else {
+					values.add(value);
+				}
+			}
+		}
+		return headers;
+	}
+
+	private static String canonical(String name) {
+		return switch (name) {
+		case "v" -> "via";
+		case "f" -> "from";
+		case "t" -> "to";
+		case "i" -> "call-id";
+		case "m" -> "contact";
+		default -> name;
+		};
+	}
+
+	private static String first(Map<String, List<String>> headers, String name) {
+		List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? "" : values.get(0);
+	}
+
+	private static String user(String requestUri) {
+		int colon = requestUri.indexOf(':');
+		int at = requestUri.indexOf('@');
+		return at < 0 ? requestUri.substring(colon + 1) : requestUri.substring(colon + 1, at);
+	}
+
+	@Override
+	public void close() throws Exception {
+		running.set(false);
+		socket.close();
+		scheduler.shutdownNow();
+		receiver.join(5000);
+	}
+
+}
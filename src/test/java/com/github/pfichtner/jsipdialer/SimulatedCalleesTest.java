@@ -0,0 +1,71 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class SimulatedCalleesTest {
+
+	@Test
+	void eachCalleeBehavesAsNamed() throws Exception {
+		try (SimulatedCallees callees = new SimulatedCallees(CalleeBehavior.ACCEPT);
+				SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options.of("127.0.0.1", callees.port(), "udp"));
+				CallManager callManager = new CallManager(endpoint, "user", "pass", 10)) {
+			var accepted = callManager.submit("accept1", null, 5);
+			var refused = callManager.submit("refuse1", null, 5);
+			var ringingThenAccepted = callManager.submit("ringing_then_accept1", null, 5);
+			var ringingThenDeclined = callManager.submit("ringing_then_decline1", null, 5);
+			var ignored = callManager.submit("ignore1", null, 1);
+
+			assertThat(accepted.get(10, TimeUnit.SECONDS).success()).isTrue();
+			assertThat(refused.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(403);
+			CallResult ringing = ringingThenAccepted.get(10, TimeUnit.SECONDS);
+			assertThat(ringing.success()).isTrue();
+			assertThat(ringing.postDialDelay()).isPresent();
+			assertThat(ringingThenDeclined.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(603);
+			CallResult timedOut = ignored.get(10, TimeUnit.SECONDS);
+			assertThat(timedOut.success()).isFalse();
+			assertThat(timedOut.cancelSent()).isTrue();
+			assertThat(callees.invitesReceived()).isEqualTo(5);
+			assertThat(callees.cancelsReceived()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void ringingCountsAsSuccessAndIsCancelledRightAway() throws Exception {
+		try (SimulatedCallees callees = new SimulatedCallees(Map.of(CalleeBehavior.ACCEPT, 1), Duration.ZERO,
+				Duration.ofSeconds(30));
+				SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options.of("127.0.0.1", callees.port(), "udp"));
+				CallManager callManager = new CallManager(endpoint, "user", "pass", 10, SuccessCriterion.RINGING)) {
+			CallResult result = callManager.submit("ringing_then_accept1", null, 20).get(10, TimeUnit.SECONDS);
+
+			assertThat(result.success()).isTrue();
+			assertThat(result.statusCode()).isEqualTo(180);
+			assertThat(result.decidedBy()).isEqualTo(CallResult.DecidedBy.SUCCESS_CRITERION);
+			assertThat(result.cancelSent()).isTrue();
+			await().atMost(5, TimeUnit.SECONDS).until(() -> callees.cancelsReceived() == 1);
+		}
+	}
+
+	@Test
+	void calleesNotNamedAfterABehaviorAreSpreadOverTheMix() throws Exception {
+		try (SimulatedCallees callees = new SimulatedCallees(
+				Map.of(CalleeBehavior.ACCEPT, 3, CalleeBehavior.REFUSE, 1), Duration.ZERO, Duration.ZERO)) {
+			long accepting = 0;
+			for (int i = 0; i < 1000; i++) {
+				CalleeBehavior behavior = callees.behaviorOf("callee" + i);
+				assertThat(behavior).isIn(CalleeBehavior.ACCEPT, CalleeBehavior.REFUSE)
+						.isSameAs(callees.behaviorOf("callee" + i));
+				accepting += behavior == CalleeBehavior.ACCEPT ? 1 : 0;
+			}
+			assertThat(accepting).isBetween(650L, 850L);
+			assertThat(callees.behaviorOf("ACCEPT_THEN_BYE7")).isSameAs(CalleeBehavior.ACCEPT_THEN_BYE);
+		}
+	}
+
+}
@@ -7,19 +7,26 @@ import static org.approvaltests.Approvals.verify;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.SoftAssertions.assertSoftly;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junitpioneer.jupiter.SetEnvironmentVariable;
 import org.junitpioneer.jupiter.StdErr;
 import org.junitpioneer.jupiter.StdIo;
 import org.junitpioneer.jupiter.StdOut;
 import org.junitpioneer.jupiter.WritesStdIo;
 
+import com.github.pfichtner.jsipdialer.CallResult.DecidedBy;
+
 class SipClientMainTest {
 
 	private static final String ARGNAME_SIP_SERVER_ADDRESS = SipClientMain.SIP_SERVER_ADDRESS;
@@ -31,6 +38,20 @@ class SipClientMainTest {
 	private static final String ARGNAME_TIMEOUT = SipClientMain.TIMEOUT;
 	private static final String ARGNAME_TRANSPORT = SipClientMain.TRANSPORT;
 	private static final String ARGNAME_VIA_ADDRESS = SipClientMain.VIA_ADDRESS;
+	private static final String ARGNAME_LOCAL_PORT = SipClientMain.LOCAL_PORT;
+	private static final String ARGNAME_DAEMON = SipClientMain.DAEMON;
+	private static final String ARGNAME_VIRTUAL_THREADS = SipClientMain.VIRTUAL_THREADS;
+	private static final String ARGNAME_NIO_TRANSPORT = SipClientMain.NIO_TRANSPORT;
+	private static final String ARGNAME_KEEP_ALIVE = SipClientMain.KEEP_ALIVE;
+	private static final String ARGNAME_PROBE_INTERVAL = SipClientMain.PROBE_INTERVAL;
+	private static final String ARGNAME_BATCH = SipClientMain.BATCH;
+	private static final String ARGNAME_CONCURRENCY = SipClientMain.CONCURRENCY;
+	private static final String ARGNAME_CPS = SipClientMain.CPS;
+	private static final String ARGNAME_LOG_LEVEL = SipClientMain.LOG_LEVEL;
+	private static final String ARGNAME_SUCCESS_ON = SipClientMain.SUCCESS_ON;
+	private static final String ARGNAME_SIP_TIMER_T1 = SipClientMain.SIP_TIMER_T1;
+	private static final String ARGNAME_RETRY_ON = SipClientMain.RETRY_ON;
+	private static final String ARGNAME_MAX_ATTEMPTS = SipClientMain.MAX_ATTEMPTS;
 	private static final String ARGNAME_HELP_SHORT = "-" + SipClientMain.HELP_SHORT_OPT;
 	private static final String ARGNAME_HELP_LONG = "--" + SipClientMain.HELP;
 
@@ -44,30 +65,70 @@ class SipClientMainTest {
 		String callerName;
 		int timeout;
 		String transport;
+		PortRange localPorts;
 		String viaAddress;
+		SuccessCriterion successCriterion;
+		TimerT1 timerT1;
+		RetryPolicy retryPolicy;
+		SipEndpoint.Execution execution;
+		int keepAliveSeconds;
+		int probeIntervalSeconds;
+		boolean nioTransport;
 		boolean callServiceReturn;
+		SipEndpoint.Options endpointOptions;
+		final List<String> daemonDestinationNumbers = new ArrayList<>();
 
 		@Override
-		protected CallService createCallService(String serverAddress, int serverPort, String username,
-				String password, String destinationNumber, String callerName, int timeout, String transport,
-				String viaAddress) {
-			this.serverAddress = serverAddress;
-			this.serverPort = serverPort;
+		protected CallService createCallService(SipEndpoint.Options endpointOptions, String username,
+				String password, String destinationNumber, String callerName, int timeout,
+				SuccessCriterion successCriterion, RetryPolicy retryPolicy) {
+			this.serverAddress = endpointOptions.serverAddress();
+			this.serverPort = endpointOptions.serverPort();
 			this.username = username;
 			this.password = password;
 			this.destinationNumber = destinationNumber;
 			this.callerName = callerName;
 			this.timeout = timeout;
-			this.transport = transport;
-			this.viaAddress = viaAddress;
+			this.transport = endpointOptions.transport();
+			this.localPorts = endpointOptions.localPorts();
+			this.viaAddress = endpointOptions.viaAddress();
+			this.successCriterion = successCriterion;
+			this.timerT1 = endpointOptions.timerT1();
+			this.retryPolicy = retryPolicy;
 			return new CallService(null, 0, null, null, null, null, 0, null) {
 				@Override
 				public boolean call() {
 					return callServiceReturn;
 				}
+
+				@Override
+				public CompletableFuture<CallResult> callAsync() {
+					return CompletableFuture.completedFuture(new CallResult(callServiceReturn,
+							callServiceReturn ? 200 : 486, callServiceReturn ? "OK" : "Busy Here",
+							DecidedBy.DIALOG_LISTENER, false, 0, 0, 0, 0, 0, 0, 0));
+				}
 			};
 		}
 
+		@Override
+		protected SipEndpoint createEndpoint(SipEndpoint.Options options) {
+			this.endpointOptions = options;
+			this.execution = options.execution();
+			this.keepAliveSeconds = options.keepAliveSeconds();
+			this.probeIntervalSeconds = options.probeIntervalSeconds();
+			this.nioTransport = options.nioTransport();
+			return null;
+		}
+
+		@Override
+		protected CallService createCallService(SipEndpoint endpoint, String username, String password,
+				String destinationNumber, String callerName, int timeout, SuccessCriterion successCriterion,
+				RetryPolicy retryPolicy) {
+			daemonDestinationNumbers.add(destinationNumber);
+			return createCallService(endpointOptions, username, password, destinationNumber, callerName, timeout,
+					successCriterion, retryPolicy);
+		}
+
 	}
 
 	final Map<String, Object> params = checkValuesAreUnique(Map.of( //
@@ -79,7 +140,8 @@ class SipClientMainTest {
 			ARGNAME_DESTINATION_NUMBER, "12345", //
 			ARGNAME_TIMEOUT, SipClientMain.DEFAULT_TIMEOUT + 1, //
 			ARGNAME_TRANSPORT, "tcp", //
-			ARGNAME_VIA_ADDRESS, "192.168.1.50" //
+			ARGNAME_VIA_ADDRESS, "192.168.1.50", //
+			ARGNAME_LOCAL_PORT, CallService.DEFAULT_LOCAL_PORT + 1 //
 	));
 
 	final SipClientMainSpy sipClientMainSpy = new SipClientMainSpy();
@@ -193,6 +255,122 @@ class SipClientMainTest {
 		assertThat(sipClientMainSpy.viaAddress).isNull();
 	}
 
+	@Test
+	void canSetLocalPort() throws Exception {
+		callMain(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD, ARGNAME_LOCAL_PORT)));
+		assertThat(sipClientMainSpy.localPorts).isEqualTo(PortRange.of((int) value(ARGNAME_LOCAL_PORT)));
+	}
+
+	@Test
+	void localPortDefaultsToFixedPort() throws Exception {
+		callMain(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)));
+		assertThat(sipClientMainSpy.localPorts).isEqualTo(PortRange.of(CallService.DEFAULT_LOCAL_PORT));
+	}
+
+	@Test
+	void localPortZeroIsLeftToTheTransport() throws Exception {
+		callMain(and(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)),
+				"-" + ARGNAME_LOCAL_PORT, "0"));
+		assertThat(sipClientMainSpy.localPorts).isEqualTo(PortRange.EPHEMERAL);
+	}
+
+	@Test
+	void canSetLocalPortRange() throws Exception {
+		callMain(and(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)),
+				"-" + ARGNAME_LOCAL_PORT, "20000-20100"));
+		assertThat(sipClientMainSpy.localPorts).isEqualTo(new PortRange(20000, 20100));
+	}
+
+	@Test
+	@StdIo
+	@WritesStdIo
+	void invalidLocalPortIsRejected(StdErr stderr) throws Exception {
+		int exitCode = callMainReturningExitCode(and(
+				setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)),
+				"-" + ARGNAME_LOCAL_PORT, "20100-20000"));
+		assertThat(exitCode).isEqualTo(1);
+		assertThat(join(stderr.capturedLines())).contains("Invalid port range 20100-20000");
+	}
+
+	@Test
+	void successCriterionDefaultsToAnswered() throws Exception {
+		callMain(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)));
+		assertThat(sipClientMainSpy.successCriterion).isEqualTo(SuccessCriterion.ANSWERED);
+	}
+
+	@Test
+	void canSetSuccessCriterion() throws Exception {
+		callMain(argsWithValue(ARGNAME_SUCCESS_ON, "early-media"));
+		assertThat(sipClientMainSpy.successCriterion).isEqualTo(SuccessCriterion.EARLY_MEDIA);
+	}
+
+	@Test
+	@StdIo
+	@WritesStdIo
+	void unsupportedSuccessCriterionIsRejected(StdErr stderr) throws Exception {
+		int exitCode = callMainReturningExitCode(argsWithValue(ARGNAME_SUCCESS_ON, "voicemail"));
+		assertThat(exitCode).isEqualTo(1);
+		assertThat(join(stderr.capturedLines()))
+				.contains("Unsupported success criterion 'voicemail', must be one of [answered, ringing, early-media]");
+	}
+
+	@Test
+	void timerT1DefaultsTo500Millis() throws Exception {
+		callMain(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)));
+		assertThat(sipClientMainSpy.timerT1).isEqualTo(TimerT1.DEFAULT);
+	}
+
+	@Test
+	void canSetTimerT1() throws Exception {
+		callMain(argsWithValue(ARGNAME_SIP_TIMER_T1, "40"));
+		assertThat(sipClientMainSpy.timerT1).isEqualTo(new TimerT1(40));
+	}
+
+	@Test
+	void timerT1CanBeMeasured() throws Exception {
+		callMain(argsWithValue(ARGNAME_SIP_TIMER_T1, "auto"));
+		assertThat(sipClientMainSpy.timerT1).isEqualTo(TimerT1.AUTO);
+	}
+
+	@Test
+	@StdIo
+	@WritesStdIo
+	void invalidTimerT1IsRejected(StdErr stderr) throws Exception {
+		int exitCode = callMainReturningExitCode(argsWithValue(ARGNAME_SIP_TIMER_T1, "5000"));
+		assertThat(exitCode).isEqualTo(1);
+		assertThat(join(stderr.capturedLines())).contains("T1 must be auto or 1..4000 ms, was 5000");
+	}
+
+	@Test
+	void retriesAreDisabledByDefault() throws Exception {
+		callMain(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)));
+		assertThat(sipClientMainSpy.retryPolicy).isEqualTo(RetryPolicy.NONE);
+	}
+
+	@Test
+	void canConfigureRetries() throws Exception {
+		callMain(and(argsWithValue(ARGNAME_RETRY_ON, "486, 503"), "-" + ARGNAME_MAX_ATTEMPTS, "5"));
+		assertThat(sipClientMainSpy.retryPolicy)
+				.isEqualTo(new RetryPolicy(Set.of(486, 503), 5, RetryPolicy.DEFAULT_BACKOFF));
+	}
+
+	@Test
+	@StdIo
+	@WritesStdIo
+	void invalidRetryCodeIsRejected(StdErr stderr) throws Exception {
+		int exitCode = callMainReturningExitCode(argsWithValue(ARGNAME_RETRY_ON, "200"));
+		assertThat(exitCode).isEqualTo(1);
+		assertThat(join(stderr.capturedLines())).contains("200 is not a failure status code");
+	}
+
+	@Test
+	void metricsAreWrittenToFile(@TempDir Path dir) throws Exception {
+		Path metricsFile = dir.resolve("jsipdialer.prom");
+		callMain(and(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)),
+				"-" + SipClientMain.METRICS_FILE, metricsFile.toString()));
+		assertThat(Files.readString(metricsFile)).contains("# TYPE jsipdialer_calls_started_total counter");
+	}
+
 	@Test
 	void defaultsToUdpTransport() throws Exception {
 		callMain(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)));
@@ -210,6 +388,17 @@ class SipClientMainTest {
 		verifyStdoutAndStderr(stdOut, stderr);
 	}
 
+	@Test
+	@StdIo
+	@WritesStdIo
+	void unsupportedLogLevelIsRejected(StdErr stderr) throws Exception {
+		var args = and(setValuesOn(and(requiredArgs(), ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD)),
+				"-" + ARGNAME_LOG_LEVEL, "trace");
+		int exitCode = callMainReturningExitCode(args);
+		assertThat(exitCode).isEqualTo(1);
+		assertThat(join(stderr.capturedLines())).contains("Unsupported log level 'trace'");
+	}
+
 	@Test
 	@StdIo
 	@WritesStdIo
@@ -282,6 +471,96 @@ class SipClientMainTest {
 		assertThat(join(stderr.capturedLines())).contains("control characters are not allowed");
 	}
 
+	@Test
+	@StdIo({ "111", "", "222" })
+	@WritesStdIo
+	void daemonModeCallsEachDestinationNumberReadFromStdin(StdOut stdOut) throws Exception {
+		sipClientMainSpy.callServiceReturn = true;
+		int exitCode = callMainReturningExitCode(and(
+				setValuesOn(ARGNAME_SIP_SERVER_ADDRESS, ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD),
+				"-" + ARGNAME_DAEMON));
+		assertThat(exitCode).isZero();
+		assertThat(sipClientMainSpy.daemonDestinationNumbers).containsExactly("111", "222");
+		assertThat(stdOut.capturedLines()).containsExactly("111\tOK", "222\tOK");
+		assertThat(sipClientMainSpy.execution).isEqualTo(SipEndpoint.Execution.PLATFORM);
+		assertThat(sipClientMainSpy.keepAliveSeconds).isEqualTo(SipClientMain.DEFAULT_KEEP_ALIVE);
+		assertThat(sipClientMainSpy.probeIntervalSeconds).isEqualTo(SipClientMain.DEFAULT_PROBE_INTERVAL);
+	}
+
+	@Test
+	@StdIo({ "111" })
+	@WritesStdIo
+	void daemonModeCanRunOnVirtualThreads(StdOut stdOut) throws Exception {
+		sipClientMainSpy.callServiceReturn = true;
+		int exitCode = callMainReturningExitCode(and(
+				setValuesOn(ARGNAME_SIP_SERVER_ADDRESS, ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD),
+				"-" + ARGNAME_DAEMON, "-" + ARGNAME_VIRTUAL_THREADS));
+		assertThat(exitCode).isZero();
+		assertThat(sipClientMainSpy.execution).isEqualTo(SipEndpoint.Execution.VIRTUAL);
+	}
+
+	@Test
+	@StdIo({ "111" })
+	@WritesStdIo
+	void daemonModeCanUseTheNioTransport(StdOut stdOut) throws Exception {
+		sipClientMainSpy.callServiceReturn = true;
+		int exitCode = callMainReturningExitCode(and(
+				setValuesOn(ARGNAME_SIP_SERVER_ADDRESS, ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD),
+				"-" + ARGNAME_DAEMON, "-" + ARGNAME_NIO_TRANSPORT));
+		assertThat(exitCode).isZero();
+		assertThat(sipClientMainSpy.nioTransport).isTrue();
+	}
+
+	@Test
+	@StdIo({ "111" })
+	@WritesStdIo
+	void daemonModeKeepAliveCanBeDisabled(StdOut stdOut) throws Exception {
+		sipClientMainSpy.callServiceReturn = true;
+		int exitCode = callMainReturningExitCode(and(
+				setValuesOn(ARGNAME_SIP_SERVER_ADDRESS, ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD),
+				"-" + ARGNAME_DAEMON, "-" + ARGNAME_KEEP_ALIVE, "0"));
+		assertThat(exitCode).isZero();
+		assertThat(sipClientMainSpy.keepAliveSeconds).isZero();
+	}
+
+	@Test
+	@StdIo({ "111" })
+	@WritesStdIo
+	void daemonModeProbingCanBeDisabled(StdOut stdOut) throws Exception {
+		sipClientMainSpy.callServiceReturn = true;
+		int exitCode = callMainReturningExitCode(and(
+				setValuesOn(ARGNAME_SIP_SERVER_ADDRESS, ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD),
+				"-" + ARGNAME_DAEMON, "-" + ARGNAME_PROBE_INTERVAL, "0"));
+		assertThat(exitCode).isZero();
+		assertThat(sipClientMainSpy.probeIntervalSeconds).isZero();
+	}
+
+	@Test
+	@StdIo({ "# numbers to notify", "111", "", "222, Alice" })
+	@WritesStdIo
+	void batchModeCallsEachDestinationRead(StdOut stdOut) throws Exception {
+		sipClientMainSpy.callServiceReturn = true;
+		int exitCode = callMainReturningExitCode(and(
+				setValuesOn(ARGNAME_SIP_SERVER_ADDRESS, ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD),
+				"-" + ARGNAME_BATCH, "-"));
+		assertThat(exitCode).isZero();
+		assertThat(sipClientMainSpy.daemonDestinationNumbers).containsExactly("111", "222");
+		assertThat(sipClientMainSpy.callerName).isEqualTo("Alice");
+		assertThat(stdOut.capturedLines()).containsExactly("111\tOK", "222\tOK");
+	}
+
+	@Test
+	@StdIo({ "111" })
+	@WritesStdIo
+	void batchModeFailsIfAnyCallFailed(StdOut stdOut) throws Exception {
+		sipClientMainSpy.callServiceReturn = false;
+		int exitCode = callMainReturningExitCode(and(
+				setValuesOn(ARGNAME_SIP_SERVER_ADDRESS, ARGNAME_SIP_USERNAME, ARGNAME_SIP_PASSWORD),
+				"-" + ARGNAME_BATCH, "-", "-" + ARGNAME_CONCURRENCY, "5", "-" + ARGNAME_CPS, "10"));
+		assertThat(exitCode).isEqualTo(1);
+		assertThat(stdOut.capturedLines()).containsExactly("111\tFAILED\tBusy Here");
+	}
+
 	@Test
 	@StdIo
 	@WritesStdIo
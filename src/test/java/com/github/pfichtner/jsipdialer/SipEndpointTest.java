@@ -0,0 +1,82 @@
+package com.github.pfichtner.jsipdialer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class SipEndpointTest {
+
+	@Test
+	void keepsTheTcpConnectionToTheProxyAlive() throws Exception {
+		try (ServerSocket proxy = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+			proxy.setSoTimeout(5000);
+			try (SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options.of("127.0.0.1", proxy.getLocalPort(), "tcp")
+					.withViaAddress("127.0.0.1").withKeepAliveSeconds(1)); Socket connection = proxy.accept()) {
+				connection.setSoTimeout(5000);
+				// both keep-alives arrive over the one connection established right away
+				String received = readUntil(connection.getInputStream(), 2, "OPTIONS sip:");
+				assertThat(count(received, "OPTIONS sip:")).isEqualTo(2);
+			}
+		}
+	}
+
+	@Test
+	void autoTimerT1IsMeasuredBeforeTheFirstCall() throws Exception {
+		try (SimulatedCallees proxy = new SimulatedCallees(CalleeBehavior.ACCEPT);
+				SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options.of("127.0.0.1", proxy.port(), "udp")
+						.withViaAddress("127.0.0.1").withTimerT1(TimerT1.AUTO))) {
+			// the loopback round-trip time is far below the lower bound
+			assertThat(endpoint.timerT1Millis()).isEqualTo(RttEstimator.MIN_T1_MILLIS);
+		}
+	}
+
+	@Test
+	void fixedTimerT1IsUsedAsIs() throws Exception {
+		try (SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options.of("127.0.0.1", 5060, "udp")
+				.withViaAddress("127.0.0.1").withTimerT1(new TimerT1(40)))) {
+			assertThat(endpoint.timerT1Millis()).isEqualTo(40);
+		}
+	}
+
+	@Test
+	void placesCallsOverTheNioTransport() throws Exception {
+		try (SimulatedCallees callees = new SimulatedCallees(CalleeBehavior.ACCEPT);
+				SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options.of("127.0.0.1", callees.port(), "udp")
+						.withViaAddress("127.0.0.1").withNioTransport(true))) {
+			CallResult result = new CallService(endpoint, "user", "pass", "accept1", null, 5, SuccessCriterion.ANSWERED,
+					RetryPolicy.NONE).callAsync().get(5, TimeUnit.SECONDS);
+
+			assertThat(result.success()).isTrue();
+			assertThat(callees.invitesReceived()).isEqualTo(1);
+		}
+	}
+
+	private static String readUntil(InputStream in, int times, String marker) throws Exception {
+		StringBuilder received = new StringBuilder();
+		byte[] buf = new byte[4096];
+		while (count(received.toString(), marker) < times) {
+			int read = in.read(buf);
+			if (read < 0) {
+				break;
+			}
+			received.append(new String(buf, 0, read, UTF_8));
+		}
+		return received.toString();
+	}
+
+	private static int count(String value, String marker) {
+		int count = 0;
+		for (int i = value.indexOf(marker); i >= 0; i = value.indexOf(marker, i + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+}
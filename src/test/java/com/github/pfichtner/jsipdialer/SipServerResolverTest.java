@@ -0,0 +1,149 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pfichtner.jsipdialer.SipServerResolver.SrvRecord;
+
+class SipServerResolverTest {
+
+	private final StubDns dns = new StubDns();
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	void listIsTriedInTheGivenOrder() {
+		dns.a("pbx2.lan", "10.0.0.2");
+		assertThat(resolver("10.0.0.1:5070, pbx2.lan").targets()).containsExactly(new SipTarget("10.0.0.1", 5070),
+				new SipTarget("10.0.0.2", 5060));
+		assertThat(dns.srvLookups).hasValue(0);
+	}
+
+	@Test
+	void srvRecordsAreOrderedByPriority() {
+		dns.srv("_sip._udp.example.com", new SrvRecord(20, 0, 5080, "backup.example.com"),
+				new SrvRecord(10, 0, 5070, "primary.example.com"));
+		dns.a("primary.example.com", "10.0.0.1", "10.0.0.11");
+		dns.a("backup.example.com", "10.0.0.2");
+		assertThat(resolver("example.com").targets()).containsExactly(new SipTarget("10.0.0.1", 5070),
+				new SipTarget("10.0.0.11", 5070), new SipTarget("10.0.0.2", 5080));
+	}
+
+	@Test
+	void withoutSrvRecordsTheAddressesOfTheHostAreUsed() {
+		dns.a("pbx.lan", "10.0.0.1");
+		assertThat(resolver("pbx.lan").targets()).containsExactly(new SipTarget("10.0.0.1", 5060));
+	}
+
+	@Test
+	void explicitPortSkipsSrv() {
+		dns.srv("_sip._udp.pbx.lan", new SrvRecord(10, 0, 5070, "other.lan"));
+		dns.a("pbx.lan", "10.0.0.1");
+		assertThat(resolver("pbx.lan:5090").targets()).containsExactly(new SipTarget("10.0.0.1", 5090));
+	}
+
+	@Test
+	void resultIsCachedUntilTheTtlExpires() {
+		dns.a("pbx.lan", "10.0.0.1");
+		SipServerResolver resolver = resolver("pbx.lan");
+		resolver.targets();
+		dns.a("pbx.lan", "10.0.0.2");
+		now.addAndGet(Duration.ofSeconds(59).toNanos());
+		assertThat(resolver.targets()).containsExactly(new SipTarget("10.0.0.1", 5060));
+		now.addAndGet(Duration.ofSeconds(2).toNanos());
+		assertThat(resolver.targets()).containsExactly(new SipTarget("10.0.0.2", 5060));
+		assertThat(dns.addressLookups).hasValue(2);
+	}
+
+	@Test
+	void previousResultIsKeptIfResolvingFails() {
+		dns.a("pbx.lan", "10.0.0.1");
+		SipServerResolver resolver = resolver("pbx.lan");
+		resolver.targets();
+		dns.addresses.clear();
+		now.addAndGet(Duration.ofMinutes(5).toNanos());
+		assertThat(resolver.targets()).containsExactly(new SipTarget("10.0.0.1", 5060));
+	}
+
+	@Test
+	void unresolvableServerIsUsedAsConfigured() {
+		assertThat(resolver("pbx.lan").targets()).containsExactly(new SipTarget("pbx.lan", 5060));
+	}
+
+	@Test
+	void srvWeightsSpreadTheOrder() {
+		List<SrvRecord> records = List.of(new SrvRecord(10, 90, 5060, "heavy"), new SrvRecord(10, 10, 5060, "light"));
+		Random random = new Random(42);
+		int heavyFirst = 0;
+		for (int i = 0; i < 1000; i++) {
+			heavyFirst += SipServerResolver.order(records, random).get(0).target().equals("heavy") ? 1 : 0;
+		}
+		assertThat(heavyFirst).isBetween(850, 950);
+	}
+
+	@Test
+	void invalidPortIsRejected() {
+		assertThatThrownBy(() -> resolver("pbx.lan:sip")).isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("pbx.lan:sip");
+	}
+
+	private SipServerResolver resolver(String serverAddress) {
+		return new SipServerResolver(serverAddress, 5060, "udp", dns, Duration.ofSeconds(60), now::get,
+				new Random(0));
+	}
+
+	private static final class StubDns implements SipServerResolver.Dns {
+
+		final Map<String, List<SrvRecord>> srv = new HashMap<>();
+		final Map<String, List<InetAddress>> addresses = new HashMap<>();
+		final AtomicInteger srvLookups = new AtomicInteger();
+		final AtomicInteger addressLookups = new AtomicInteger();
+
+		void srv(String name, SrvRecord... records) {
+			srv.put(name, List.of(records));
+		}
+
+		void a(String host, String... ips) {
+			addresses.put(host, List.of(ips).stream().map(StubDns::address).toList());
+		}
+
+		@Override
+		public List<SrvRecord> srv(String name) throws NamingException {
+			srvLookups.incrementAndGet();
+			return srv.getOrDefault(name, List.of());
+		}
+
+		@Override
+		public List<InetAddress> addresses(String host) throws UnknownHostException {
+			addressLookups.incrementAndGet();
+			List<InetAddress> result = addresses.get(host);
+			if (result == null) {
+				throw new UnknownHostException(host);
+			}
+			return result;
+		}
+
+		private static InetAddress address(String ip) {
+			try {
+				return InetAddress.getByName(ip);
+			} catch (UnknownHostException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+	}
+
+}
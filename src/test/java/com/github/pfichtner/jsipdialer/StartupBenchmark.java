@@ -0,0 +1,132 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures what every alert pays for a cold process start: the time from
+ * launching jsipdialer until its INVITE arrives and until the process has
+ * exited, for each given native binary or jar (run with {@code java -jar}), one
+ * accepted call per run against {@link SimulatedCallees}. If GNU time is
+ * installed as {@code /usr/bin/time} the peak RSS of each run is measured too. Each binary gets one
+ * warm-up run that is not counted, so all of them start with a warm page cache.
+ * <p>
+ * Without arguments {@code target/jsipdialer} and the jar are compared. To see
+ * what the {@code pgo} profile buys, keep a copy of the image of a build without
+ * it and pass both. Note that {@code target/jsipdialer} is UPX compressed in
+ * {@code pre-integration-test}, which adds the decompression to its startup.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.github.pfichtner.jsipdialer.StartupBenchmark \
+ *   -Dexec.args="[runs] [binary or jar...]"
+ * </pre>
+ */
+public class StartupBenchmark {
+
+	private static final int DEFAULT_RUNS = 20;
+	private static final long RUN_TIMEOUT_SECONDS = 30;
+	private static final Path GNU_TIME = Path.of("/usr/bin/time");
+
+	public static void main(String... args) throws Exception {
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+		List<Path> binaries = args.length > 1 ? Arrays.stream(args).skip(1).map(Path::of).toList() : defaults();
+
+		System.out.printf("%-40s %5s %28s %28s %26s%n", "binary", "runs", "first INVITE p50/p90/max ms",
+				"wall time p50/p90/max ms", "peak RSS p50/p90/max MB");
+		try (SimulatedCallees callees = new SimulatedCallees(CalleeBehavior.ACCEPT)) {
+			for (Path binary : binaries) {
+				run(callees, binary);
+				long[] firstInvite = new long[runs];
+				long[] wallTime = new long[runs];
+				long[] peakRss = new long[runs];
+				for (int i = 0; i < runs; i++) {
+					long[] measured = run(callees, binary);
+					firstInvite[i] = measured[0];
+					wallTime[i] = measured[1];
+					peakRss[i] = measured[2];
+				}
+				System.out.printf("%-40s %5d %28s %28s %26s%n", binary.getFileName(), runs,
+						summary(firstInvite, 1e6), summary(wallTime, 1e6),
+						peakRss[0] < 0 ? "n/a" : summary(peakRss, 1024));
+			}
+		}
+	}
+
+	private static List<Path> defaults() throws Exception {
+		List<Path> binaries = new ArrayList<>();
+		Path nativeImage = Path.of("target/jsipdialer");
+		if (Files.isExecutable(nativeImage)) {
+			binaries.add(nativeImage);
+		}
+		try (Stream<Path> jars = Files.list(Path.of("target"))) {
+			jars.filter(p -> p.getFileName().toString().matches("jsipdialer-.*\\.jar")).findFirst()
+					.ifPresent(binaries::add);
+		}
+		if (binaries.isEmpty()) {
+			throw new IllegalStateException("Nothing to benchmark in target/, run mvn package first");
+		}
+		return binaries;
+	}
+
+	/**
+	 * @return the nanos until the INVITE arrived and until the process exited and
+	 *         the peak RSS in KiB, -1 if unknown
+	 */
+	private static long[] run(SimulatedCallees callees, Path binary) throws Exception {
+		List<String> command = new ArrayList<>();
+		Path rssFile = null;
+		if (Files.isExecutable(GNU_TIME)) {
+			rssFile = Files.createTempFile("jsipdialer-rss", ".txt");
+			command.addAll(List.of(GNU_TIME.toString(), "-f", "%M", "-o", rssFile.toString()));
+		}
+		if (binary.toString().endsWith(".jar")) {
+			command.addAll(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(), "-jar"));
+		}
+		command.addAll(List.of(binary.toAbsolutePath().toString(), //
+				"-sipServerAddress", "127.0.0.1", //
+				"-sipServerPort", String.valueOf(callees.port()), //
+				"-destinationNumber", "accept", //
+				"-localPort", "0", //
+				"-logLevel", "off"));
+		ProcessBuilder processBuilder = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+				.redirectError(ProcessBuilder.Redirect.DISCARD);
+		processBuilder.environment().put(SipClientMain.ENVVAR_SIP_USERNAME, "benchmark");
+		processBuilder.environment().put(SipClientMain.ENVVAR_SIP_PASSWORD, "benchmark");
+
+		long invitesBefore = callees.invitesReceived();
+		long start = System.nanoTime();
+		Process process = processBuilder.start();
+		if (!process.waitFor(RUN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			process.destroyForcibly();
+			throw new IllegalStateException(command + " did not finish within " + RUN_TIMEOUT_SECONDS + "s");
+		}
+		long end = System.nanoTime();
+		if (process.exitValue() != 0 || callees.invitesReceived() == invitesBefore) {
+			throw new IllegalStateException(command + " failed with exit code " + process.exitValue());
+		}
+		long peakRss = -1;
+		if (rssFile != null) {
+			peakRss = Long.parseLong(Files.readString(rssFile).strip());
+			Files.delete(rssFile);
+		}
+		return new long[] { callees.lastInviteAt() - start, end - start, peakRss };
+	}
+
+	private static String summary(long[] values, double divisor) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return "%.1f / %.1f / %.1f".formatted(percentile(sorted, 0.5) / divisor, percentile(sorted, 0.9) / divisor,
+				sorted[sorted.length - 1] / divisor);
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+	}
+
+}
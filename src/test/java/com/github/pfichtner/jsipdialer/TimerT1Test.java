@@ -0,0 +1,30 @@
+package com.github.pfichtner.jsipdialer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+class TimerT1Test {
+
+	@Test
+	void parsesMillis() {
+		assertThat(TimerT1.parse("40")).isEqualTo(new TimerT1(40));
+	}
+
+	@Test
+	void parsesAuto() {
+		assertThat(TimerT1.parse("auto")).isEqualTo(TimerT1.AUTO);
+		assertThat(TimerT1.AUTO.isAuto()).isTrue();
+		assertThat(TimerT1.DEFAULT.isAuto()).isFalse();
+	}
+
+	@Test
+	void rejectsInvalidValues() {
+		assertThatThrownBy(() -> TimerT1.parse("abc")).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> TimerT1.parse("0")).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> TimerT1.parse("-1")).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> TimerT1.parse("4001")).isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.github.pfichtner.jsipdialer;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.github.pfichtner.jsipdialer.SipEndpoint.Execution;
+
+/**
+ * Places the same calls to {@link SimulatedCallees} over mjSIP's UDP transport
+ * and over the {@link NioUdpTransport} and prints the calls completed per
+ * second, the CPU time spent per call and the number of live threads of each.
+ * Every callee accepts at once, so the calls stress the transport rather than
+ * wait for callees. Each transport is warmed up with a tenth of the calls
+ * first.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.github.pfichtner.jsipdialer.TransportBenchmark \
+ *   -Dexec.args="[calls] [concurrency]"
+ * </pre>
+ */
+public class TransportBenchmark {
+
+	private static final int CALL_TIMEOUT_SECONDS = 5;
+
+	public static void main(String... args) throws Exception {
+		int calls = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+		int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		EventLog.setLevel(EventLog.Level.OFF);
+
+		System.out.printf("%d calls, %d at a time%n", calls, concurrency);
+		System.out.printf("%-6s %10s %14s %8s %8s%n", "udp", "calls/s", "cpu us/call", "threads", "failed");
+		for (boolean nio : new boolean[] { false, true }) {
+			run(nio, Math.max(1, calls / 10), concurrency, false);
+			run(nio, calls, concurrency, true);
+		}
+	}
+
+	private static void run(boolean nio, int calls, int concurrency, boolean print) throws Exception {
+		com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory
+				.getOperatingSystemMXBean();
+		try (SimulatedCallees callees = new SimulatedCallees(Map.of(CalleeBehavior.ACCEPT, 1), Duration.ZERO,
+				Duration.ZERO);
+				SipEndpoint endpoint = new SipEndpoint(SipEndpoint.Options.of("127.0.0.1", callees.port(), "udp")
+						.withViaAddress("127.0.0.1").withExecution(Execution.VIRTUAL).withNioTransport(nio));
+				CallManager callManager = new CallManager(endpoint, "user", "pass", concurrency)) {
+			List<CompletableFuture<CallResult>> results = new ArrayList<>(calls);
+			long cpuBefore = os.getProcessCpuTime();
+			long start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				results.add(callManager.submit("callee" + i, null, CALL_TIMEOUT_SECONDS));
+			}
+			int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+			CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).handle((ignored, e) -> null).join();
+			long elapsedNanos = System.nanoTime() - start;
+			long cpuNanos = os.getProcessCpuTime() - cpuBefore;
+
+			long failed = results.stream().map(result -> result.exceptionally(e -> null).join())
+					.filter(result -> result == null || !result.success()).count();
+			if (print) {
+				System.out.printf("%-6s %10.1f %14.1f %8d %8d%n", nio ? "nio" : "mjsip", calls / (elapsedNanos / 1e9),
+						cpuNanos / 1e3 / calls, threads, failed);
+			}
+		}
+	}
+
+}